@@ -0,0 +1,59 @@
+package benchmark;
+
+import modele.Cell;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Construction de grilles reproductibles pour les benchmarks : la même taille et le même remplissage donnent toujours la même grille
+ */
+public final class Boards {
+
+    private Boards() {
+    }
+
+    /**
+     * @param size la taille de la grille
+     * @param fill le remplissage voulu
+     * @return les valeurs de la grille (0 pour une case vide), tirées avec une graine fixe
+     */
+    public static int[][] layout(int size, Fill fill) {
+        Random random = new Random(31L * size + fill.ordinal());
+        int[][] values = new int[size][size];
+        int placed = 0;
+        while (placed < fill.tiles(size)) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            if (values[x][y] == 0) {
+                values[x][y] = 1 << (1 + random.nextInt(6));
+                placed++;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Remplace le contenu du jeu par les valeurs passées en paramètre
+     * @param game le jeu à modifier
+     * @param values les valeurs de la grille (0 pour une case vide)
+     */
+    public static void apply(Game game, int[][] values) {
+        for (int x = 0; x < values.length; x++) {
+            for (int y = 0; y < values.length; y++) {
+                game.setCell(x, y, Cell.of(values[x][y]));
+            }
+        }
+    }
+
+    /**
+     * Remet le jeu dans l'état d'une partie qui commence sur ces valeurs, sans rien allouer : l'historique des coups est vidé
+     * (restart), sinon il grandirait à chaque remise en état
+     * @param game le jeu à remettre en état
+     * @param values les valeurs de la grille (0 pour une case vide)
+     */
+    public static void reset(Game game, int[][] values) {
+        game.restart();
+        apply(game, values);
+    }
+}
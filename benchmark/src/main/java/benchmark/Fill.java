@@ -0,0 +1,22 @@
+package benchmark;
+
+/**
+ * Taux de remplissage des grilles utilisées en entrée des benchmarks
+ */
+public enum Fill {
+    SPARSE(0.15), HALF(0.5), NEARLY_FULL(1.0);
+
+    private final double ratio;
+
+    Fill(double ratio) {
+        this.ratio = ratio;
+    }
+
+    /**
+     * @param size la taille de la grille
+     * @return le nombre de cases occupées pour ce remplissage (au moins 2, et toujours au moins une case libre pour que rnd() se termine)
+     */
+    public int tiles(int size) {
+        return Math.max(2, Math.min(size * size - 1, (int) Math.round(ratio * size * size)));
+    }
+}
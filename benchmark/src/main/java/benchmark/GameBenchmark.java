@@ -0,0 +1,65 @@
+package benchmark;
+
+import modele.Cell;
+import modele.Game;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût des opérations de Game appelées à chaque coup en dehors du déplacement lui-même :
+ * la détection de fin de partie (hasNextMove) et la proposition du résultat de la partie (updateFile). Le placement d'une nouvelle case
+ * est mesuré à part dans SpawnBenchmark. Le jeu est construit sans interface (Game.builder) : les résultats ne sont pas enregistrés,
+ * et seule la comparaison en mémoire est mesurée.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmark {
+
+    @Param({"3", "4", "5", "6"})
+    public int size;
+
+    @Param({"SPARSE", "HALF", "NEARLY_FULL"})
+    public Fill fill;
+
+    private Game game;
+    private int[][] layout;
+    private Cell smallCell;
+    private Cell recordCell;
+
+    @Setup(Level.Trial)
+    public void createGame() {
+        game = Game.builder(size).build();
+        layout = Boards.layout(size, fill);
+        Boards.apply(game, layout);
+        smallCell = Cell.of(2);
+        recordCell = Cell.of(2048);
+    }
+
+    @Benchmark
+    public boolean hasNextMove() {
+        return game.hasNextMove();
+    }
+
+    /**
+     * updateFile sur une case qui ne bat pas la plus grosse case de la partie : aucune entrée-sortie
+     */
+    @Benchmark
+    public Game updateFileNoRecord() {
+        game.updateFile(smallCell);
+        return game;
+    }
+
+    /**
+     * updateFile sur une case 2048 : le résultat de la partie ne change qu'au premier appel, les suivants ne font que la comparaison en mémoire
+     */
+    @Benchmark
+    public Game updateFileRecord() {
+        game.updateFile(recordCell);
+        return game;
+    }
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import modele.Direction;
+import modele.Game;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût d'un coup complet (Game.move) : déplacement, fusions, nouvelle case et proposition du résultat. Le jeu est construit sans
+ * interface (Game.builder) : sans battements du chronomètre ni fichier des scores.
+ * Un coup modifie la grille, qui doit donc être remise dans son état initial avant chaque mesure. Pour que cette remise en état
+ * (et le temps pris à la mesure) ne pèse pas sur des coups de moins d'une microseconde, chaque appel joue un coup sur chacun
+ * des BATCH jeux d'un lot, remis en état ensemble avant l'appel et sans allocation (voir Boards.reset) : les résultats sont
+ * donnés par coup (OperationsPerInvocation).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveBenchmark {
+    static final int BATCH = 256;
+
+    @Param({"3", "4", "5", "6"})
+    public int size;
+
+    @Param({"SPARSE", "HALF", "NEARLY_FULL"})
+    public Fill fill;
+
+    @Param({"up", "down", "left", "right"})
+    public Direction direction;
+
+    private Game[] games;
+    private int[][] layout;
+
+    @Setup(Level.Trial)
+    public void createGames() {
+        games = new Game[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            games[i] = Game.builder(size).seed(i).build();
+        }
+        layout = Boards.layout(size, fill);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetBoards() {
+        for (Game game : games) {
+            Boards.reset(game, layout);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void move(Blackhole blackhole) {
+        for (Game game : games) {
+            blackhole.consume(game.move(direction));
+        }
+    }
+}
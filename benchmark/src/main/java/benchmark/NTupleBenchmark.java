@@ -0,0 +1,84 @@
+package benchmark;
+
+import ia.NTupleNetwork;
+import modele.Bitboard;
+import modele.Direction;
+import modele.SeededRandom;
+import org.openjdk.jmh.annotations.*;
+import simulation.NTupleTrainer;
+import simulation.SimulationReport;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût du réseau de n-uplets : évaluation d'un plateau, choix d'un coup (quatre évaluations), et partie d'entraînement complète.
+ * Le nombre de coups de chaque partie d'entraînement est compté (AuxCounters) : JMH en donne le débit en coups par seconde.
+ * Le réseau est d'abord entraîné sur quelques centaines de parties, pour que les parties mesurées aient une longueur réaliste.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Thread)
+public class NTupleBenchmark {
+
+    @Param({"SMALL", "STANDARD"})
+    public String tuples;
+
+    private NTupleNetwork network;
+    private NTupleTrainer trainer;
+    private long[] boards;
+    private int next;
+    private long seed;
+
+    /**
+     * Coups joués pendant les parties d'entraînement mesurées
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Moves {
+        public long moves;
+    }
+
+    @Setup(Level.Trial)
+    public void train() {
+        network = NTupleNetwork.create(tuples.equals("SMALL") ? NTupleNetwork.SMALL_TUPLES : NTupleNetwork.STANDARD_TUPLES);
+        trainer = new NTupleTrainer(network, NTupleTrainer.DEFAULT_LEARNING_RATE, new ForkJoinPool(1));
+        trainer.train(500, 0);
+        // plateaux de milieu de partie, joués par le réseau
+        Random random = new SeededRandom(1);
+        boards = new long[1024];
+        long board = Bitboard.spawn(Bitboard.spawn(0, random), random);
+        for (int i = 0; i < boards.length; i++) {
+            Direction direction = network.bestMove(board);
+            if (direction == null) {
+                board = Bitboard.spawn(Bitboard.spawn(0, random), random);
+                direction = network.bestMove(board);
+            }
+            board = Bitboard.spawn(Bitboard.move(board, direction), random);
+            boards[i] = board;
+        }
+    }
+
+    @Benchmark
+    public float evaluate() {
+        next = (next + 1) & (boards.length - 1);
+        return network.evaluate(boards[next]);
+    }
+
+    @Benchmark
+    public Direction bestMove() {
+        next = (next + 1) & (boards.length - 1);
+        return network.bestMove(boards[next]);
+    }
+
+    @Benchmark
+    public SimulationReport trainingGame(Moves counter) {
+        SimulationReport report = trainer.train(1, seed++);
+        counter.moves += report.getMoves();
+        return report;
+    }
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import modele.Game;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût du placement d'une nouvelle case (Game.rnd), proposition du résultat comprise (jeu sans interface, sans fichier des scores).
+ * rnd() remplit une case libre : comme dans MoveBenchmark, chaque appel place une case dans chacun des BATCH jeux d'un lot,
+ * remis en état ensemble avant l'appel, et les résultats sont donnés par case placée.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpawnBenchmark {
+    static final int BATCH = MoveBenchmark.BATCH;
+
+    @Param({"3", "4", "5", "6"})
+    public int size;
+
+    @Param({"SPARSE", "HALF", "NEARLY_FULL"})
+    public Fill fill;
+
+    private Game[] games;
+    private int[][] layout;
+
+    @Setup(Level.Trial)
+    public void createGames() {
+        games = new Game[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            games[i] = Game.builder(size).seed(i).build();
+        }
+        layout = Boards.layout(size, fill);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetBoards() {
+        for (Game game : games) {
+            Boards.reset(game, layout);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Game[] rnd() {
+        for (Game game : games) {
+            game.rnd();
+        }
+        return games;
+    }
+}
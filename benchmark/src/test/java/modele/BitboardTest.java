@@ -0,0 +1,179 @@
+package modele;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Le plateau compacté (Bitboard) et le déplacement ligne par ligne de Game doivent suivre exactement les mêmes règles : Game.move
+ * passe de l'un à l'autre selon Bitboard.fits. Les deux sont comparés à un déplacement de référence écrit ici, indépendamment.
+ */
+class BitboardTest {
+    private static final int SIZE = Bitboard.SIZE;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Déplacement de référence d'une ligne vers son début : les cases se tassent, et deux cases égales qui se suivent fusionnent,
+     * une seule fois par coup, sauf à l'exposant maximal des cases
+     * @param line les exposants de la ligne, dans le sens du déplacement
+     * @return les exposants après le déplacement
+     */
+    private static int[] slide(int[] line) {
+        int[] tiles = new int[line.length];
+        int count = 0;
+        for (int exponent : line) {
+            if (exponent != 0) {
+                tiles[count++] = exponent;
+            }
+        }
+        int[] result = new int[line.length];
+        int target = 0;
+        for (int i = 0; i < count; i++) {
+            int exponent = tiles[i];
+            if (i + 1 < count && tiles[i + 1] == exponent && exponent != Cell.MAX_EXPONENT) {
+                exponent++;
+                i++;
+            }
+            result[target++] = exponent;
+        }
+        return result;
+    }
+
+    /**
+     * @return la ligne d'une case (x, y) : la k-ième case de la ligne line, dans le sens du déplacement
+     */
+    private static int x(Direction direction, int line, int k) {
+        return direction == Direction.up ? k : direction == Direction.down ? SIZE - 1 - k : line;
+    }
+
+    private static int y(Direction direction, int line, int k) {
+        return direction == Direction.left ? k : direction == Direction.right ? SIZE - 1 - k : line;
+    }
+
+    /**
+     * @return la grille après le déplacement de référence, sans nouvelle case
+     */
+    private static int[][] expected(int[][] board, Direction direction) {
+        int[][] result = new int[SIZE][SIZE];
+        for (int line = 0; line < SIZE; line++) {
+            int[] cells = new int[SIZE];
+            for (int k = 0; k < SIZE; k++) {
+                cells[k] = board[x(direction, line, k)][y(direction, line, k)];
+            }
+            int[] moved = slide(cells);
+            for (int k = 0; k < SIZE; k++) {
+                result[x(direction, line, k)][y(direction, line, k)] = moved[k];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Toutes les lignes dont les cases tiennent dans le plateau compacté (exposants jusqu'à 14 : leurs fusions tiennent encore
+     * sur 4 bits), placées à chaque rang du plateau, dans les quatre directions
+     */
+    @Test
+    void everyLineMovesLikeTheReference() {
+        for (int row = 0; row < 1 << 16; row++) {
+            int[] line = new int[SIZE];
+            boolean fits = true;
+            for (int k = 0; k < SIZE; k++) {
+                line[k] = (row >> (4 * k)) & 0xF;
+                fits &= line[k] < Bitboard.MAX_EXPONENT;
+            }
+            if (!fits) {
+                continue;
+            }
+            int[] moved = slide(line);
+            for (Direction direction : DIRECTIONS) {
+                int rank = row % SIZE;
+                long board = 0;
+                for (int k = 0; k < SIZE; k++) {
+                    board = Bitboard.setExponent(board, x(direction, rank, k), y(direction, rank, k), line[k]);
+                }
+                long result = Bitboard.move(board, direction);
+                for (int k = 0; k < SIZE; k++) {
+                    assertEquals(moved[k], Bitboard.getExponent(result, x(direction, rank, k), y(direction, rank, k)),
+                            "line " + Integer.toHexString(row) + " " + direction);
+                }
+            }
+        }
+    }
+
+    /**
+     * Game.move sur des grilles 4x4 tirées au hasard, dont une sur quatre contient une case de 32768 (exposant 15) : le plateau
+     * compacté ne doit jamais être utilisé pour ces grilles, et les deux moteurs doivent donner la grille de référence, plus
+     * une nouvelle case quand le coup a déplacé quelque chose
+     */
+    @Test
+    void gameMovesLikeTheReferenceOnBothEngines() {
+        Random random = new Random(2048);
+        for (int test = 0; test < 20_000; test++) {
+            Game game = Game.builder(SIZE).seed(test).build();
+            int[][] board = new int[SIZE][SIZE];
+            boolean large = test % 4 == 0;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    board[x][y] = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(large ? Bitboard.MAX_EXPONENT : 6);
+                }
+            }
+            if (large) {
+                board[random.nextInt(SIZE)][random.nextInt(SIZE)] = Bitboard.MAX_EXPONENT;
+            }
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    game.setCell(x, y, Cell.ofExponent(board[x][y]));
+                }
+            }
+            assertEquals(!large, Bitboard.fits(game));
+
+            Direction direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            int[][] expected = expected(board, direction);
+            boolean moved = game.move(direction);
+            int spawned = 0;
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    int exponent = game.getCell(x, y).getExponent();
+                    if (exponent != expected[x][y]) {
+                        assertEquals(0, expected[x][y], "case (" + x + ", " + y + ") after " + direction);
+                        assertTrue(exponent == 1 || exponent == 2);
+                        spawned++;
+                    }
+                }
+            }
+            assertEquals(moved ? 1 : 0, spawned);
+            assertEquals(moved, !Arrays.deepEquals(board, expected));
+        }
+    }
+
+    /**
+     * Deux cases de 32768 ne fusionnent pas dans le plateau compacté (le résultat ne tiendrait pas sur 4 bits) : une grille qui
+     * en contient passe par le déplacement ligne par ligne, où elles fusionnent comme les autres
+     */
+    @Test
+    void tilesOf32768MergeOutsideTheBitboard() {
+        Game game = Game.builder(SIZE).seed(1).build();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                game.setCell(x, y, Cell.ofExponent(0));
+            }
+        }
+        game.setCell(0, 0, Cell.ofExponent(Bitboard.MAX_EXPONENT));
+        game.setCell(0, 1, Cell.ofExponent(Bitboard.MAX_EXPONENT));
+        assertFalse(Bitboard.fits(game));
+
+        assertTrue(game.move(Direction.left));
+        assertEquals(Bitboard.MAX_EXPONENT + 1, game.getCell(0, 0).getExponent());
+
+        long board = Bitboard.setExponent(Bitboard.setExponent(0, 0, 0, Bitboard.MAX_EXPONENT), 0, 1, Bitboard.MAX_EXPONENT);
+        assertArrayEquals(new int[]{Bitboard.MAX_EXPONENT, Bitboard.MAX_EXPONENT},
+                new int[]{Bitboard.getExponent(Bitboard.move(board, Direction.left), 0, 0),
+                        Bitboard.getExponent(Bitboard.move(board, Direction.left), 0, 1)});
+    }
+}
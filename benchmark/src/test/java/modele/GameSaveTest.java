@@ -0,0 +1,210 @@
+package modele;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sauvegarde et reprise d'une partie (GameSave)
+ */
+class GameSaveTest {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Joue des coups tirés au hasard, jusqu'à moves coups qui font bouger la grille ou jusqu'à la fin de la partie
+     * @return le nombre de coups qui ont fait bouger la grille
+     */
+    static int play(Game game, Random random, int moves) {
+        int moved = 0;
+        for (int attempt = 0; moved < moves && !game.isGameOver() && attempt < 100 * moves; attempt++) {
+            if (game.move(DIRECTIONS[random.nextInt(DIRECTIONS.length)])) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * @return la sauvegarde de la partie, de la taille annoncée par byteSize
+     */
+    private static ByteBuffer save(Game game) {
+        ByteBuffer buffer = ByteBuffer.allocate(GameSave.byteSize(game.getSize(), game.freeCount()));
+        GameSave.write(game, buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        return buffer.flip();
+    }
+
+    /**
+     * La partie reprise doit être dans l'état sauvegardé (grille, déblocages, graine, ordre des cases vides), puis placer les mêmes
+     * nouvelles cases que la partie d'origine quand on lui joue les mêmes coups
+     */
+    private static void assertResumesLikeTheOriginal(Game game, int moves) throws IOException {
+        ByteBuffer buffer = save(game);
+        Game resumed = GameSave.read(buffer, true);
+        assertEquals(game.getSize(), resumed.getSize());
+        assertEquals(game.getUnlock(), resumed.getUnlock());
+        assertEquals(game.getSeed(), resumed.getSeed());
+        assertArrayEquals(game.exponents(), resumed.exponents());
+        assertEquals(game.freeCount(), resumed.freeCount());
+        assertArrayEquals(Arrays.copyOf(game.freeIndex(), game.freeCount()), Arrays.copyOf(resumed.freeIndex(), resumed.freeCount()));
+
+        Random directions = new Random(game.getSize());
+        for (int move = 0; move < moves && !game.isGameOver(); move++) {
+            Direction direction = DIRECTIONS[directions.nextInt(DIRECTIONS.length)];
+            assertEquals(game.move(direction), resumed.move(direction));
+            assertArrayEquals(game.exponents(), resumed.exponents(), "move " + move);
+        }
+    }
+
+    @Test
+    void midGame4x4RoundTrip() throws IOException {
+        Game game = Game.builder(4).seed(4).build();
+        game.setUnlock(3);
+        play(game, new Random(1), 30);
+        game.setUnlockedCell(0, 0);
+        game.switchCell(3, 3);
+        assertEquals(2, game.getUnlock());
+        assertEquals(GameSave.HEADER_BYTES + 16 + 2 * game.freeCount(), GameSave.byteSize(4, game.freeCount()));
+        assertResumesLikeTheOriginal(game, 40);
+    }
+
+    /**
+     * Au-delà de 256 cases, les positions ne tiennent plus sur un octet (2 octets jusqu'à 65536 cases) ; au-delà de 65536 cases,
+     * elles sont écrites sur 4 octets
+     */
+    @Test
+    void largeBoardsRoundTrip() throws IOException {
+        Game medium = Game.builder(20).seed(20).build();
+        play(medium, new Random(2), 200);
+        assertEquals(GameSave.HEADER_BYTES + 400 + 2 * medium.freeCount(), GameSave.byteSize(20, medium.freeCount()));
+        assertResumesLikeTheOriginal(medium, 100);
+
+        Game large = Game.builder(300).seed(300).build();
+        play(large, new Random(3), 20);
+        assertTrue(large.freeCount() > 1 << 16);
+        assertEquals(GameSave.HEADER_BYTES + 300 * 300 + 4 * large.freeCount(), GameSave.byteSize(300, large.freeCount()));
+        assertResumesLikeTheOriginal(large, 20);
+    }
+
+    /**
+     * Une sauvegarde de la version 1 n'a pas l'ordre des cases vides (le champ du nombre de cases vides y est réservé, à 0) : elle
+     * est lue, et les cases vides sont rangées dans l'ordre de la grille
+     */
+    @Test
+    void version1SaveIsReadWithCellsInBoardOrder() throws IOException {
+        Game game = Game.builder(4).seed(1).build();
+        play(game, new Random(5), 10);
+        ByteBuffer buffer = save(game);
+        ByteBuffer v1 = ByteBuffer.allocate(GameSave.byteSize(4, 0));
+        v1.put(buffer.array(), 0, v1.capacity()).flip();
+        v1.putInt(8, 1).putInt(GameSave.EMPTY_OFFSET, 0);
+
+        Game resumed = GameSave.read(v1, true);
+        assertArrayEquals(game.exponents(), resumed.exponents());
+        assertEquals(game.getUnlock(), resumed.getUnlock());
+        int[] expected = new int[game.freeCount()];
+        for (int position = 0, slot = 0; position < 16; position++) {
+            if (game.exponents()[position] == 0) {
+                expected[slot++] = position;
+            }
+        }
+        int[] free = Arrays.copyOf(resumed.freeIndex(), resumed.freeCount());
+        Arrays.sort(free);
+        assertArrayEquals(expected, free);
+    }
+
+    @Test
+    void corruptedSavesAreRejected() {
+        Game game = Game.builder(4).seed(9).build();
+        play(game, new Random(6), 10);
+        ByteBuffer valid = save(game);
+        int board = GameSave.HEADER_BYTES;
+        int freeList = board + 16;
+        int firstFree = Short.toUnsignedInt(valid.getShort(freeList));
+        int full = 0;
+        while (game.exponents()[full] == 0) {
+            full++;
+        }
+        int fullCell = full;
+
+        assertRejected(valid, buffer -> buffer.putLong(0, 0));
+        assertRejected(valid, buffer -> buffer.putInt(8, GameSave.VERSION + 1));
+        assertRejected(valid, buffer -> buffer.putInt(GameSave.SIZE_OFFSET, Game.MAX_SIZE + 1));
+        assertRejected(valid, buffer -> buffer.put(board + fullCell, (byte) (Cell.MAX_EXPONENT + 1)));
+        // nombre de cases vides qui ne correspond pas à la grille
+        assertRejected(valid, buffer -> buffer.putInt(GameSave.EMPTY_OFFSET, game.freeCount() - 1));
+        // case vide écrite deux fois, case pleine dans la liste, position hors de la grille
+        assertRejected(valid, buffer -> buffer.putShort(freeList + 2, (short) firstFree));
+        assertRejected(valid, buffer -> buffer.putShort(freeList, (short) fullCell));
+        assertRejected(valid, buffer -> buffer.putShort(freeList, (short) 16));
+        // liste des cases vides coupée
+        ByteBuffer cut = ByteBuffer.allocate(valid.limit() - 1).put(valid.array(), 0, valid.limit() - 1).flip();
+        assertThrows(IOException.class, () -> GameSave.read(cut, true));
+    }
+
+    private interface Corruption {
+        void apply(ByteBuffer buffer);
+    }
+
+    private static void assertRejected(ByteBuffer valid, Corruption corruption) {
+        ByteBuffer buffer = ByteBuffer.allocate(valid.limit()).put(valid.array(), 0, valid.limit()).flip();
+        corruption.apply(buffer);
+        assertThrows(IOException.class, () -> GameSave.read(buffer, true));
+    }
+
+    private static List<Path> journals(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".journal")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Une partie reprise garde sa graine : le journal de la session reprise ne doit pas écraser celui de la session qui a
+     * produit la sauvegarde, qui reste vérifiable
+     */
+    @Test
+    void resumingASaveKeepsTheJournalOfThePreviousSession(@TempDir Path directory) throws IOException {
+        Random random = new Random(16);
+        Game game = Game.builder(4).seed(7).build();
+        Journal first = Journal.record(game, directory);
+        assertNotNull(first);
+        int moves = play(game, random, 60);
+        Path save = directory.resolve("game.save");
+        GameSave.write(game, save);
+        first.close();
+        List<Path> before = journals(directory);
+        assertEquals(1, before.size());
+
+        Game resumed = GameSave.read(save, true);
+        assertEquals(game.getSeed(), resumed.getSeed());
+        Journal second = Journal.record(resumed, directory);
+        assertNotNull(second);
+        int resumedMoves = play(resumed, random, 60);
+        second.close();
+
+        List<Path> after = journals(directory);
+        assertEquals(2, after.size());
+        JournalReplay replay = JournalReplay.open(before.get(0));
+        assertEquals(moves, replay.getMoveCount());
+        assertEquals(-1, replay.verify());
+        after.removeAll(before);
+        JournalReplay resumedReplay = JournalReplay.open(after.get(0));
+        assertEquals(resumedMoves, resumedReplay.getMoveCount());
+        assertEquals(-1, resumedReplay.verify());
+    }
+}
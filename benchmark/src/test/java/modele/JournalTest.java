@@ -0,0 +1,176 @@
+package modele;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Écriture d'une partie dans un Journal et relecture par JournalReplay : vérification, accès direct à un coup, journaux corrompus
+ */
+class JournalTest {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int SIZE = 4;
+    private static final int KEYFRAME_RECORD_BYTES = 1 + 20 + SIZE * SIZE;
+
+    /**
+     * Partie jouée directement, en gardant l'état qui suit chaque coup (et les actions qui l'ont suivi avant le coup d'après) :
+     * c'est l'état que JournalReplay.seek doit retrouver
+     */
+    private static final class Recorded {
+        final Game game;
+        final List<byte[]> boards = new ArrayList<>();
+        final List<Integer> unlocks = new ArrayList<>();
+
+        Recorded(Game game) {
+            this.game = game;
+            boards.add(game.exponents().clone());
+            unlocks.add(game.getUnlock());
+        }
+
+        /**
+         * Garde l'état actuel comme celui du dernier coup joué
+         */
+        void saveState() {
+            boards.set(moves(), game.exponents().clone());
+            unlocks.set(moves(), game.getUnlock());
+        }
+
+        int moves() {
+            return boards.size() - 1;
+        }
+
+        void play(Random random, int moves) {
+            for (int played = 0, attempt = 0; played < moves && !game.isGameOver() && attempt < 100 * moves; attempt++) {
+                if (game.move(DIRECTIONS[random.nextInt(DIRECTIONS.length)])) {
+                    boards.add(game.exponents().clone());
+                    unlocks.add(game.getUnlock());
+                    played++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Une partie avec des coups, un changement du nombre de déblocages, un échange, une annulation et un redémarrage, journalisée
+     * avec une image clé tous les 8 coups
+     */
+    private static Recorded record(Path file) throws IOException {
+        Random random = new Random(15);
+        Recorded recorded = new Recorded(Game.builder(SIZE).seed(2048).build());
+        Game game = recorded.game;
+        Journal journal = Journal.create(file, game, 8);
+
+        game.setUnlock(2);
+        recorded.saveState();
+        recorded.play(random, 25);
+        game.setUnlockedCell(0, 0);
+        game.switchCell(SIZE - 1, SIZE - 1);
+        recorded.saveState();
+        recorded.play(random, 10);
+        assertTrue(game.undo());
+        recorded.saveState();
+        recorded.play(random, 10);
+        game.restart();
+        recorded.saveState();
+        recorded.play(random, 30);
+
+        assertTrue(recorded.moves() > 60);
+        assertEquals(recorded.moves(), journal.getMoveCount());
+        journal.close();
+        return recorded;
+    }
+
+    @Test
+    void recordedGameVerifies(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("game.journal");
+        Recorded recorded = record(file);
+        JournalReplay replay = JournalReplay.open(file);
+        assertEquals(SIZE, replay.getSize());
+        assertEquals(2048, replay.getSeed());
+        assertEquals(recorded.moves(), replay.getMoveCount());
+        assertEquals(-1, replay.verify());
+    }
+
+    /**
+     * seek(k) repart de l'image clé qui précède le coup k : la grille doit être celle de la partie jouée directement jusqu'au coup k
+     */
+    @Test
+    void seekMatchesTheGamePlayedDirectly(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("game.journal");
+        Recorded recorded = record(file);
+        JournalReplay replay = JournalReplay.open(file);
+        for (int move = 0; move <= recorded.moves(); move++) {
+            Game game = replay.seek(move);
+            assertArrayEquals(recorded.boards.get(move), game.exponents(), "move " + move);
+            assertEquals(recorded.unlocks.get(move).intValue(), game.getUnlock(), "move " + move);
+        }
+        assertThrows(IllegalArgumentException.class, () -> replay.seek(recorded.moves() + 1));
+    }
+
+    /**
+     * Un type d'enregistrement inconnu, ou une longueur qui coupe un enregistrement, rend le journal illisible
+     */
+    @Test
+    void corruptedRecordIsRejected(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("game.journal");
+        record(file);
+        byte[] data = Files.readAllBytes(file);
+
+        byte[] unknownRecord = data.clone();
+        int second = Journal.HEADER_BYTES + KEYFRAME_RECORD_BYTES;
+        assertEquals(Journal.UNLOCK, unknownRecord[second]);
+        unknownRecord[second] = 0x7F;
+        Path corrupted = directory.resolve("record.journal");
+        Files.write(corrupted, unknownRecord);
+        assertThrows(IOException.class, () -> JournalReplay.open(corrupted));
+
+        byte[] cutRecord = data.clone();
+        ByteBuffer.wrap(cutRecord).putLong(Journal.LENGTH_OFFSET, data.length - 1);
+        Path cut = directory.resolve("length.journal");
+        Files.write(cut, cutRecord);
+        assertThrows(IOException.class, () -> JournalReplay.open(cut));
+
+        byte[] notAJournal = data.clone();
+        notAJournal[0] ^= 1;
+        Path magic = directory.resolve("magic.journal");
+        Files.write(magic, notAJournal);
+        assertThrows(IOException.class, () -> JournalReplay.open(magic));
+    }
+
+    /**
+     * Une image clé qui ne correspond plus à la partie rejouée (grille modifiée) est signalée par verify, au numéro de son coup
+     */
+    @Test
+    void corruptedKeyframeIsReportedByVerify(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("game.journal");
+        Random random = new Random(4);
+        Recorded recorded = new Recorded(Game.builder(SIZE).seed(7).build());
+        Journal journal = Journal.create(file, recorded.game, 4);
+        recorded.play(random, 4);
+        assertEquals(4, journal.getMoveCount());
+        journal.close();
+
+        // première image clé, bloc de 4 coups (type, nombre, un octet de directions), puis l'image clé du coup 4
+        byte[] data = Files.readAllBytes(file);
+        int keyframe = Journal.HEADER_BYTES + KEYFRAME_RECORD_BYTES + 3;
+        assertEquals(Journal.KEYFRAME, data[keyframe]);
+        assertEquals(-1, JournalReplay.open(file).verify());
+
+        data[keyframe + 21] ^= 1;
+        Path corrupted = directory.resolve("keyframe.journal");
+        Files.write(corrupted, data);
+        assertEquals(4, JournalReplay.open(corrupted).verify());
+    }
+}
@@ -0,0 +1,155 @@
+package modele;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tableau des scores (Leaderboard) sur un fichier temporaire : ordre des résultats, reprise sur la copie précédente d'un tableau
+ * abîmé, sondage des places quand deux types de partie ont la même place de départ
+ */
+class LeaderboardTest {
+
+    private static Leaderboard.Entry entry(long gameId, int exponent, long timeMillis, long date) {
+        return new Leaderboard.Entry(gameId, "p" + gameId, exponent, timeMillis, date);
+    }
+
+    private static List<Long> gameIds(List<Leaderboard.Entry> entries) {
+        List<Long> ids = new ArrayList<>();
+        for (Leaderboard.Entry entry : entries) {
+            ids.add(entry.getGameId());
+        }
+        return ids;
+    }
+
+    /**
+     * Inverse un octet de la copie copy du tableau à cette place, dans la zone des résultats
+     */
+    private static void corrupt(Path file, int slot, int copy) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = Leaderboard.offset(slot) + (long) copy * Leaderboard.COPY_BYTES + Leaderboard.COPY_HEADER_BYTES;
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) ~value.get(0)).clear();
+            channel.write(value, position);
+        }
+    }
+
+    /**
+     * Plus grosse case d'abord, puis 2048 atteint le plus vite (une partie qui ne l'a pas atteint vient après), puis la plus ancienne.
+     * Seuls les RANKS meilleurs restent dans le tableau, mais les records gardent la plus grosse case et le meilleur temps.
+     */
+    @Test
+    void topKeepsTheBestEntriesInOrder(@TempDir Path directory) throws IOException {
+        Leaderboard leaderboard = Leaderboard.forFile(directory.resolve("scores.dat"));
+        leaderboard.offer(4, 1, entry(1, 11, 9000, 10));
+        leaderboard.offer(4, 1, entry(2, 11, 0, 11));
+        leaderboard.offer(4, 1, entry(3, 11, 5000, 12));
+        leaderboard.offer(4, 1, entry(4, 12, 0, 13));
+        leaderboard.offer(4, 1, entry(5, 11, 5000, 9));
+        for (long id = 6; id < 20; id++) {
+            leaderboard.offer(4, 1, entry(id, 5, 0, id));
+        }
+        // une partie déjà dans le tableau garde son premier temps et sa plus grosse case
+        leaderboard.offer(4, 1, entry(1, 10, 4000, 30));
+
+        List<Leaderboard.Entry> top = leaderboard.top(4, 1);
+        assertEquals(Leaderboard.RANKS, top.size());
+        assertEquals(List.of(4L, 5L, 3L, 1L, 2L, 6L, 7L, 8L, 9L, 10L), gameIds(top));
+        assertEquals(2048, top.get(3).getMaxTile());
+        assertEquals(9000, top.get(3).getTimeMillis());
+        assertEquals(4096, leaderboard.getBestTile(4, 1));
+        assertEquals(5000, leaderboard.getBestTimeMillis(4, 1));
+
+        // un autre nombre de déblocages est un autre tableau
+        assertTrue(leaderboard.top(4, 0).isEmpty());
+        leaderboard.reset(4, 1);
+        assertTrue(leaderboard.top(4, 1).isEmpty());
+        assertEquals(0, leaderboard.getBestTile(4, 1));
+    }
+
+    /**
+     * Chaque écriture remplace la copie la plus ancienne : si la dernière écrite est abîmée (arrêt pendant l'écriture), la lecture
+     * revient à l'autre, qui n'a perdu que le dernier résultat ; si les deux le sont, la place est vue comme libre
+     */
+    @Test
+    void damagedCopyFallsBackToThePreviousOne(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("scores.dat");
+        Leaderboard leaderboard = Leaderboard.forFile(file);
+        int slot = Leaderboard.home(5, 0);
+        leaderboard.offer(5, 0, entry(1, 8, 0, 1));
+        leaderboard.offer(5, 0, entry(2, 9, 0, 2));
+        assertEquals(List.of(2L, 1L), gameIds(leaderboard.top(5, 0)));
+        long generation = leaderboard.getGeneration();
+
+        // la place prise reçoit un tableau vide (copie 0), puis les deux résultats vont dans la copie 1, puis dans la copie 0
+        corrupt(file, slot, 0);
+        assertEquals(List.of(1L), gameIds(leaderboard.top(5, 0)));
+        assertEquals(256, leaderboard.getBestTile(5, 0));
+
+        // l'écriture suivante repart de la copie valide, et remplace la copie abîmée
+        leaderboard.offer(5, 0, entry(3, 10, 0, 3));
+        assertEquals(List.of(3L, 1L), gameIds(leaderboard.top(5, 0)));
+        assertNotEquals(generation, leaderboard.getGeneration());
+
+        corrupt(file, slot, 0);
+        corrupt(file, slot, 1);
+        assertTrue(leaderboard.top(5, 0).isEmpty());
+        assertEquals(0, leaderboard.getBestTile(5, 0));
+    }
+
+    /**
+     * Deux types de partie de même place de départ : le second prend la place suivante. Un autre Leaderboard sur une copie du
+     * fichier (sans les places gardées en mémoire) doit les retrouver par le même sondage.
+     */
+    @Test
+    void collidingBoardsProbeTheNextSlot(@TempDir Path directory) throws IOException {
+        int home = Leaderboard.home(4, 0);
+        int size = Game.MIN_SIZE;
+        int unlock = -1;
+        search:
+        for (; size <= Game.MAX_SIZE; size++) {
+            for (int u = 0; u < 256; u++) {
+                if ((size != 4 || u != 0) && Leaderboard.home(size, u) == home) {
+                    unlock = u;
+                    break search;
+                }
+            }
+        }
+        assertTrue(unlock >= 0);
+
+        Path file = directory.resolve("scores.dat");
+        Leaderboard leaderboard = Leaderboard.forFile(file);
+        leaderboard.offer(4, 0, entry(1, 11, 0, 1));
+        leaderboard.offer(size, unlock, entry(2, 7, 0, 2));
+        // le premier type de partie est relu à sa place même après l'écriture du second
+        leaderboard.offer(4, 0, entry(3, 6, 0, 3));
+
+        Path copy = directory.resolve("copy.dat");
+        Files.copy(file, copy);
+        for (Leaderboard reader : List.of(leaderboard, Leaderboard.forFile(copy))) {
+            assertEquals(List.of(1L, 3L), gameIds(reader.top(4, 0)));
+            assertEquals(List.of(2L), gameIds(reader.top(size, unlock)));
+            assertEquals(128, reader.getBestTile(size, unlock));
+        }
+
+        // la place suivante est bien celle du second : l'abîmer ne touche que lui
+        corrupt(copy, (home + 1) % Leaderboard.BOARDS, 0);
+        corrupt(copy, (home + 1) % Leaderboard.BOARDS, 1);
+        Leaderboard damaged = Leaderboard.forFile(copy);
+        assertEquals(List.of(1L, 3L), gameIds(damaged.top(4, 0)));
+        assertTrue(damaged.top(size, unlock).isEmpty());
+    }
+}
@@ -1,30 +1,128 @@
 import modele.Cell;
 import modele.Direction;
 import modele.Game;
+import modele.GameSave;
+import modele.Journal;
+import modele.JournalReplay;
+import ia.NTupleNetwork;
+import serveur.GameServer;
+import simulation.NTuplePolicy;
+import simulation.NTupleTrainer;
+import simulation.SimulationReport;
+import simulation.Simulator;
 import vue_controleur.Console2048;
 import vue_controleur.Swing2048;
 
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("simulate")) {
+            mainSimulation(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("train")) {
+            mainTraining(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            mainServer(args);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("replay")) {
+            mainReplay(args);
+            return;
+        }
         mainConsole();
         mainSwing();
 
     }
 
+    /**
+     * Mode simulation sans interface : java Main simulate [parties] [taille] [stratégie] [threads]
+     * par défaut 100000 parties en 4x4 avec la stratégie random, sur tous les coeurs
+     */
+    public static void mainSimulation(String[] args) {
+        long games = args.length > 1 ? Long.parseLong(args[1]) : 100000;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String policy = args.length > 3 ? args[3] : "random";
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        Simulator simulator = new Simulator(size, Simulator.policy(policy), new ForkJoinPool(threads));
+        SimulationReport report = simulator.run(games, System.nanoTime());
+        System.out.println(size + "x" + size + ", stratégie " + policy + ", " + threads + " threads");
+        System.out.print(report);
+    }
+
+    /**
+     * Entraînement du réseau de n-uplets : java Main train [parties par tour] [tours] [fichier] [threads]
+     * par défaut 10000 parties par tour, 10 tours, sur tous les coeurs. L'entraînement reprend le réseau du fichier s'il existe
+     * (par défaut NTuplePolicy.WEIGHTS_FILE, utilisé par la stratégie ntuple), et l'y enregistre à la fin de chaque tour.
+     */
+    public static void mainTraining(String[] args) throws IOException {
+        long games = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path file = Paths.get(args.length > 3 ? args[3] : NTuplePolicy.WEIGHTS_FILE);
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        NTupleNetwork network = Files.exists(file) ? NTupleNetwork.load(file, true) : NTupleNetwork.create(NTupleNetwork.STANDARD_TUPLES);
+        NTupleTrainer trainer = new NTupleTrainer(network, NTupleTrainer.DEFAULT_LEARNING_RATE, new ForkJoinPool(threads));
+        System.out.println(network.getWeightCount() + " poids, " + threads + " threads");
+        long seed = System.nanoTime();
+        for (int round = 1; round <= rounds; round++) {
+            SimulationReport report = trainer.train(games, seed + round * games);
+            network.save(file);
+            System.out.println("Tour " + round + " :");
+            System.out.print(report);
+        }
+    }
+
+    /**
+     * Vérification d'un journal de partie : java Main replay fichier [coup]
+     * affiche le résultat de la vérification, puis la grille au coup demandé (par défaut le dernier)
+     */
+    public static void mainReplay(String[] args) throws IOException {
+        JournalReplay replay = JournalReplay.open(Paths.get(args[1]));
+        long divergence = replay.verify();
+        System.out.println(replay.getSize() + "x" + replay.getSize() + ", graine " + replay.getSeed() + ", " + replay.getMoveCount() + " coups");
+        System.out.println(divergence < 0 ? "Journal valide" : "Journal invalide : la partie rejouée diverge au coup " + divergence);
+        long move = args.length > 2 ? Long.parseLong(args[2]) : replay.getMoveCount();
+        System.out.print("Coup " + move + " :\n" + replay.seek(move));
+    }
+
+    /**
+     * Serveur de parties : java Main serve [port ou chemin d'un socket Unix], par défaut le port 2048 sur l'interface loopback
+     */
+    public static void mainServer(String[] args) throws IOException, InterruptedException {
+        String address = args.length > 1 ? args[1] : Integer.toString(GameServer.DEFAULT_PORT);
+        GameServer server = address.chars().allMatch(Character::isDigit)
+                ? GameServer.tcp(Integer.parseInt(address)) : GameServer.unix(Paths.get(address));
+        server.start();
+        System.out.println("Serveur 2048 sur " + server.getAddress());
+        Thread.currentThread().join();
+    }
+
     public static void mainConsole() {
         Game game = new Game(4);
+        Journal.record(game);
         Console2048 vue = new Console2048(game);
         game.addObserver(vue);
 
         vue.start();
     }
 
+    /**
+     * Interface graphique : reprend la partie sauvegardée à la dernière fermeture de la fenêtre, ou commence une partie 4x4
+     */
     public static void mainSwing() {
 
-        Game game = new Game(4);
+        Game game = GameSave.resume(Swing2048.SAVE_FILE, 4);
         Swing2048 vue = new Swing2048(game);
         game.addObserver(vue);
 
@@ -0,0 +1,313 @@
+package ia;
+
+import modele.Bitboard;
+import modele.Direction;
+import modele.Game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Solveur expectimax pour les grilles 4x4 : alterne les noeuds du joueur (on garde la meilleure des quatre directions) et les
+ * noeuds du hasard (moyenne sur toutes les cases libres où Game.rnd peut placer un 2 ou un 4, avec une chance sur deux chacun).
+ * La recherche travaille sur le plateau compacté de Bitboard, les sous-arbres proches de la racine sont répartis sur un pool
+ * à vol de tâches, et les positions déjà évaluées sont gardées dans une table de transposition partagée.
+ *
+ * La profondeur est augmentée d'un coup à la fois tant que le budget de temps le permet : une profondeur interrompue par
+ * l'échéance est abandonnée, et on renvoie le meilleur coup de la dernière profondeur terminée.
+ */
+public class ExpectimaxSolver {
+    public static final long HINT_MILLIS = 50;
+    public static final int MAX_DEPTH = 20;
+
+    private static final float SPAWN_PROBABILITY = 0.5f;
+    // en dessous de cette probabilité d'arriver dans un noeud, on se contente de l'évaluation statique
+    private static final float PROBABILITY_CUTOFF = 0.0001f;
+    // les noeuds du hasard à au moins cette profondeur restante sont découpés en sous-tâches
+    private static final int PARALLEL_DEPTH = 3;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ForkJoinPool pool;
+    private final TranspositionTable table;
+
+    /**
+     * Solveur sur le pool commun, avec une table de 2^22 entrées (64 Mo)
+     */
+    public ExpectimaxSolver() {
+        this(ForkJoinPool.commonPool(), 22);
+    }
+
+    /**
+     * @param pool le pool sur lequel la recherche est parallélisée
+     * @param tableBits la table de transposition contient 2^tableBits entrées de 16 octets
+     */
+    public ExpectimaxSolver(ForkJoinPool pool, int tableBits) {
+        this.pool = pool;
+        this.table = new TranspositionTable(tableBits);
+    }
+
+    /**
+     * Conseil interactif : meilleur coup trouvé en HINT_MILLIS millisecondes environ
+     * @param game le jeu, de taille 4
+     * @return la direction conseillée, ou null si plus aucun coup n'est possible
+     */
+    public Direction hint(Game game) {
+        return bestMove(game, HINT_MILLIS, MAX_DEPTH);
+    }
+
+    /**
+     * @param game le jeu, de taille 4 (voir Bitboard.fits)
+     * @param timeBudgetMillis le temps de recherche maximal, ou 0 pour ne s'arrêter qu'à maxDepth
+     * @param maxDepth le nombre maximal de coups du joueur explorés
+     * @return la meilleure direction trouvée, ou null si plus aucun coup n'est possible
+     */
+    public Direction bestMove(Game game, long timeBudgetMillis, int maxDepth) {
+        return bestMove(Bitboard.of(game), timeBudgetMillis, maxDepth);
+    }
+
+    /**
+     * Même recherche que bestMove(Game, long, int), sur un plateau déjà compacté
+     */
+    public Direction bestMove(long board, long timeBudgetMillis, int maxDepth) {
+        long deadline = timeBudgetMillis <= 0 ? Long.MAX_VALUE : System.nanoTime() + timeBudgetMillis * 1_000_000;
+        Direction best = null;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            Search search = new Search(deadline);
+            Direction direction = pool.invoke(new RootTask(board, depth, search));
+            if (search.aborted) {
+                break;
+            }
+            best = direction;
+            if (direction == null) {
+                return null;
+            }
+        }
+        if (best == null) {
+            // le budget n'a même pas suffi pour la profondeur 1 : on joue le premier coup possible
+            for (Direction direction : DIRECTIONS) {
+                if (Bitboard.move(board, direction) != board) {
+                    return direction;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Noeud du joueur : meilleure note parmi les coups possibles, 0 si la partie est perdue
+     */
+    private float maxNode(long board, int depth, float probability, Search search) {
+        float best = 0;
+        for (Direction direction : DIRECTIONS) {
+            long moved = Bitboard.move(board, direction);
+            if (moved != board) {
+                best = Math.max(best, chanceNode(moved, depth - 1, probability, search));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Noeud du hasard : moyenne, sur toutes les cases libres, des notes obtenues en y plaçant un 2 ou un 4
+     */
+    private float chanceNode(long board, int depth, float probability, Search search) {
+        if (depth <= 0 || probability < PROBABILITY_CUTOFF) {
+            return Heuristic.evaluate(board);
+        }
+        if (search.expired()) {
+            return 0;
+        }
+        float cached = table.get(board, depth);
+        if (!Float.isNaN(cached)) {
+            return cached;
+        }
+
+        int empty = Bitboard.countEmpty(board);
+        float childProbability = probability * SPAWN_PROBABILITY / empty;
+        float score = 0;
+        for (int i = 0; i < Bitboard.SIZE * Bitboard.SIZE; i++) {
+            if (((board >>> (4 * i)) & 0xF) == 0) {
+                score += spawnScore(board, i, depth, childProbability, search);
+            }
+        }
+        score /= empty;
+
+        if (!search.aborted) {
+            table.put(board, depth, score);
+        }
+        return score;
+    }
+
+    private float spawnScore(long board, int cell, int depth, float probability, Search search) {
+        return SPAWN_PROBABILITY * maxNode(board | (1L << (4 * cell)), depth, probability, search)
+                + SPAWN_PROBABILITY * maxNode(board | (2L << (4 * cell)), depth, probability, search);
+    }
+
+    /**
+     * État d'une recherche à profondeur fixée : échéance, et indicateur d'abandon partagé par toutes ses tâches
+     */
+    private static final class Search {
+        private final long deadline;
+        private volatile boolean aborted;
+
+        Search(long deadline) {
+            this.deadline = deadline;
+        }
+
+        boolean expired() {
+            if (!aborted && System.nanoTime() > deadline) {
+                aborted = true;
+            }
+            return aborted;
+        }
+    }
+
+    /**
+     * Racine de la recherche : chaque coup possible est évalué dans sa propre tâche
+     */
+    private final class RootTask extends RecursiveTask<Direction> {
+        private static final long serialVersionUID = 1L;
+
+        private final long board;
+        private final int depth;
+        private final Search search;
+
+        RootTask(long board, int depth, Search search) {
+            this.board = board;
+            this.depth = depth;
+            this.search = search;
+        }
+
+        @Override
+        protected Direction compute() {
+            List<Direction> directions = new ArrayList<>();
+            List<ChanceTask> tasks = new ArrayList<>();
+            for (Direction direction : DIRECTIONS) {
+                long moved = Bitboard.move(board, direction);
+                if (moved != board) {
+                    directions.add(direction);
+                    tasks.add(new ChanceTask(moved, depth - 1, 1f, search));
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            Direction best = null;
+            float bestScore = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                float score = tasks.get(i).join();
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = directions.get(i);
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Noeud du hasard évalué en parallèle : une sous-tâche par case libre tant que la profondeur restante est suffisante,
+     * puis évaluation séquentielle
+     */
+    private final class ChanceTask extends RecursiveTask<Float> {
+        private static final long serialVersionUID = 1L;
+
+        private final long board;
+        private final int depth;
+        private final float probability;
+        private final Search search;
+
+        ChanceTask(long board, int depth, float probability, Search search) {
+            this.board = board;
+            this.depth = depth;
+            this.probability = probability;
+            this.search = search;
+        }
+
+        @Override
+        protected Float compute() {
+            if (depth < PARALLEL_DEPTH || probability < PROBABILITY_CUTOFF) {
+                return chanceNode(board, depth, probability, search);
+            }
+            if (search.expired()) {
+                return 0f;
+            }
+            float cached = table.get(board, depth);
+            if (!Float.isNaN(cached)) {
+                return cached;
+            }
+
+            int empty = Bitboard.countEmpty(board);
+            float childProbability = probability * SPAWN_PROBABILITY / empty;
+            List<SpawnTask> tasks = new ArrayList<>();
+            for (int i = 0; i < Bitboard.SIZE * Bitboard.SIZE; i++) {
+                if (((board >>> (4 * i)) & 0xF) == 0) {
+                    tasks.add(new SpawnTask(board, i, depth, childProbability, search));
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            float score = 0;
+            for (SpawnTask task : tasks) {
+                score += task.join();
+            }
+            score /= empty;
+            if (!search.aborted) {
+                table.put(board, depth, score);
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Note moyenne obtenue en plaçant un 2 ou un 4 sur une case libre donnée
+     */
+    private final class SpawnTask extends RecursiveTask<Float> {
+        private static final long serialVersionUID = 1L;
+
+        private final long board;
+        private final int cell;
+        private final int depth;
+        private final float probability;
+        private final Search search;
+
+        SpawnTask(long board, int cell, int depth, float probability, Search search) {
+            this.board = board;
+            this.cell = cell;
+            this.depth = depth;
+            this.probability = probability;
+            this.search = search;
+        }
+
+        @Override
+        protected Float compute() {
+            return SPAWN_PROBABILITY * parallelMaxNode(board | (1L << (4 * cell)), depth, probability, search)
+                    + SPAWN_PROBABILITY * parallelMaxNode(board | (2L << (4 * cell)), depth, probability, search);
+        }
+    }
+
+    /**
+     * Même calcul que maxNode, chaque coup possible étant évalué dans sa propre tâche si la profondeur restante le justifie
+     */
+    private float parallelMaxNode(long board, int depth, float probability, Search search) {
+        if (depth - 1 < PARALLEL_DEPTH) {
+            return maxNode(board, depth, probability, search);
+        }
+        List<ChanceTask> tasks = new ArrayList<>();
+        for (Direction direction : DIRECTIONS) {
+            long moved = Bitboard.move(board, direction);
+            if (moved != board) {
+                tasks.add(new ChanceTask(moved, depth - 1, probability, search));
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        float best = 0;
+        for (ChanceTask task : tasks) {
+            best = Math.max(best, task.join());
+        }
+        return best;
+    }
+}
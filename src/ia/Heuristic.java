@@ -0,0 +1,82 @@
+package ia;
+
+import modele.Bitboard;
+
+/**
+ * Évaluation statique d'un plateau 4x4 compacté (voir Bitboard), utilisée aux feuilles de la recherche.
+ * Chaque ligne et chaque colonne est notée indépendamment, à partir d'une table précalculée pour les 65536 lignes possibles :
+ * on récompense les cases vides, les fusions possibles et les lignes monotones (grosses cases rangées d'un côté).
+ */
+final class Heuristic {
+    private static final float LOST_PENALTY = 200000f;
+    private static final float MONOTONICITY_POWER = 4f;
+    private static final float MONOTONICITY_WEIGHT = 47f;
+    private static final float SUM_POWER = 3.5f;
+    private static final float SUM_WEIGHT = 11f;
+    private static final float MERGES_WEIGHT = 700f;
+    private static final float EMPTY_WEIGHT = 270f;
+
+    private static final float[] ROW_SCORE = new float[65536];
+
+    static {
+        for (int row = 0; row < 65536; row++) {
+            int[] line = new int[Bitboard.SIZE];
+            for (int i = 0; i < Bitboard.SIZE; i++) {
+                line[i] = (row >> (4 * i)) & 0xF;
+            }
+
+            float sum = 0;
+            int empty = 0;
+            int merges = 0;
+            int previous = 0;
+            int counter = 0;
+            for (int exponent : line) {
+                sum += (float) Math.pow(exponent, SUM_POWER);
+                if (exponent == 0) {
+                    empty++;
+                } else {
+                    if (previous == exponent) {
+                        counter++;
+                    } else if (counter > 0) {
+                        merges += 1 + counter;
+                        counter = 0;
+                    }
+                    previous = exponent;
+                }
+            }
+            if (counter > 0) {
+                merges += 1 + counter;
+            }
+
+            float monotonicityLeft = 0;
+            float monotonicityRight = 0;
+            for (int i = 1; i < Bitboard.SIZE; i++) {
+                float before = (float) Math.pow(line[i - 1], MONOTONICITY_POWER);
+                float after = (float) Math.pow(line[i], MONOTONICITY_POWER);
+                if (line[i - 1] > line[i]) {
+                    monotonicityLeft += before - after;
+                } else {
+                    monotonicityRight += after - before;
+                }
+            }
+
+            ROW_SCORE[row] = LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+                    - MONOTONICITY_WEIGHT * Math.min(monotonicityLeft, monotonicityRight) - SUM_WEIGHT * sum;
+        }
+    }
+
+    private Heuristic() {
+    }
+
+    /**
+     * @param board le plateau compacté
+     * @return la note du plateau, toujours positive (plus elle est grande, meilleure est la position)
+     */
+    static float evaluate(long board) {
+        float score = 0;
+        for (int i = 0; i < Bitboard.SIZE; i++) {
+            score += ROW_SCORE[Bitboard.row(board, i)] + ROW_SCORE[Bitboard.column(board, i)];
+        }
+        return score;
+    }
+}
@@ -0,0 +1,304 @@
+package ia;
+
+import modele.Bitboard;
+import modele.Direction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Évaluation apprise d'un plateau 4x4 compacté (voir Bitboard) : un réseau de n-uplets. Chaque n-uplet est une suite de cases du plateau,
+ * dont les exposants (4 bits chacun) forment l'indice d'un poids dans sa table ; la valeur d'un plateau est la somme des poids lus pour
+ * chaque n-uplet dans chacune des 8 symétries du plateau (rotations et miroirs), qui partagent donc la même table.
+ * Les poids sont des float rangés hors du tas, dans un buffer direct ou dans un fichier projeté en mémoire : un réseau enregistré
+ * (save) est chargé sans copie ni lecture préalable par load, le système ne lisant que les pages effectivement utilisées.
+ *
+ * Format du fichier (petit-boutiste, l'ordre natif des processeurs courants, pour que les poids soient lus directement) :
+ * MAGIC (8 octets), VERSION, nombre de n-uplets, puis pour chaque n-uplet sa longueur sur un octet et ses positions (x*4+y) sur
+ * MAX_TUPLE_LENGTH + 1 octets, et enfin les tables de poids des n-uplets, à la suite, chacune de 16^longueur float.
+ *
+ * Les mises à jour (learn) ne prennent aucun verrou : plusieurs threads peuvent entraîner le même réseau en même temps, une mise
+ * à jour concurrente d'un même poids pouvant alors être perdue. Ces pertes, rares sur des tables de plusieurs millions de poids,
+ * ne gênent pas l'apprentissage.
+ */
+public class NTupleNetwork {
+    /**
+     * Quatre 6-uplets : deux lignes de 6 cases à cheval sur deux rangées, et deux rectangles 2x3. 4 x 16^6 poids, soit 256 Mo.
+     */
+    public static final int[][] STANDARD_TUPLES = {
+            {0, 1, 2, 3, 4, 5}, {4, 5, 6, 7, 8, 9}, {0, 1, 2, 4, 5, 6}, {4, 5, 6, 8, 9, 10}};
+    /**
+     * Cinq 4-uplets : une ligne du bord, une ligne intérieure et trois carrés 2x2. 5 x 16^4 poids, soit 1,3 Mo, pour les essais rapides.
+     */
+    public static final int[][] SMALL_TUPLES = {
+            {0, 1, 2, 3}, {4, 5, 6, 7}, {0, 1, 4, 5}, {1, 2, 5, 6}, {5, 6, 9, 10}};
+    public static final int MAX_TUPLE_LENGTH = 6;
+
+    static final long MAGIC = 0x323034384E545550L;
+    static final int VERSION = 1;
+    private static final int SYMMETRIES = 8;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int[][] tuples;
+    // shifts[f][k] = décalage (4 * position) de la case k du n-uplet f / SYMMETRIES dans la symétrie f % SYMMETRIES
+    private final int[][] shifts;
+    // début de la table du n-uplet de chaque combinaison (n-uplet, symétrie)
+    private final int[] offsets;
+    private final ByteBuffer buffer;
+    private final FloatBuffer weights;
+
+    private NTupleNetwork(int[][] tuples, ByteBuffer buffer) {
+        this.tuples = tuples;
+        this.buffer = buffer;
+        this.shifts = new int[tuples.length * SYMMETRIES][];
+        this.offsets = new int[tuples.length * SYMMETRIES];
+        int offset = 0;
+        for (int t = 0; t < tuples.length; t++) {
+            for (int s = 0; s < SYMMETRIES; s++) {
+                int[] featureShifts = new int[tuples[t].length];
+                for (int k = 0; k < tuples[t].length; k++) {
+                    featureShifts[k] = 4 * transform(tuples[t][k], s);
+                }
+                shifts[t * SYMMETRIES + s] = featureShifts;
+                offsets[t * SYMMETRIES + s] = offset;
+            }
+            offset += 1 << (4 * tuples[t].length);
+        }
+        this.weights = buffer.duplicate().position(headerBytes(tuples.length)).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /**
+     * @param tuples les n-uplets, chacun de 1 à MAX_TUPLE_LENGTH positions x*4+y distinctes
+     * @return un réseau dont tous les poids valent 0, dans un buffer direct
+     */
+    public static NTupleNetwork create(int[][] tuples) {
+        long weightCount = weightCount(tuples);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.toIntExact(headerBytes(tuples.length) + 4 * weightCount))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(MAGIC).putInt(VERSION).putInt(tuples.length);
+        for (int[] tuple : tuples) {
+            buffer.put((byte) tuple.length);
+            for (int k = 0; k <= MAX_TUPLE_LENGTH; k++) {
+                buffer.put((byte) (k < tuple.length ? tuple[k] : 0));
+            }
+        }
+        return new NTupleNetwork(copy(tuples), buffer.clear());
+    }
+
+    /**
+     * Charge un réseau enregistré par save, en projetant le fichier en mémoire
+     * @param file le fichier du réseau
+     * @param writable true pour pouvoir continuer l'entraînement : les pages modifiées sont alors copiées en mémoire, le fichier
+     * n'est jamais modifié (il faut appeler save pour enregistrer le nouveau réseau)
+     * @return le réseau
+     * @throws IOException si le fichier ne peut pas être lu ou n'est pas un réseau
+     */
+    public static NTupleNetwork load(Path file, boolean writable) throws IOException {
+        ByteBuffer buffer;
+        if (writable) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < 16 || buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a n-tuple network");
+        }
+        if (buffer.getInt(8) != VERSION) {
+            throw new IOException("Unsupported n-tuple network version " + buffer.getInt(8));
+        }
+        int count = buffer.getInt(12);
+        if (count <= 0 || buffer.capacity() < headerBytes(count)) {
+            throw new IOException("Corrupted n-tuple network");
+        }
+        int[][] tuples = new int[count][];
+        for (int t = 0; t < count; t++) {
+            int position = 16 + t * (MAX_TUPLE_LENGTH + 2);
+            int length = buffer.get(position);
+            if (length <= 0 || length > MAX_TUPLE_LENGTH) {
+                throw new IOException("Corrupted n-tuple network: tuple length " + length);
+            }
+            tuples[t] = new int[length];
+            for (int k = 0; k < length; k++) {
+                tuples[t][k] = buffer.get(position + 1 + k);
+            }
+        }
+        try {
+            validate(tuples);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted n-tuple network: " + e.getMessage());
+        }
+        if (buffer.capacity() != headerBytes(count) + 4 * weightCount(tuples)) {
+            throw new IOException("Corrupted n-tuple network: " + buffer.capacity() + " bytes");
+        }
+        return new NTupleNetwork(tuples, buffer);
+    }
+
+    /**
+     * Enregistre le réseau. Il est d'abord écrit à côté puis renommé : le fichier contient toujours un réseau complet, l'ancien ou le nouveau
+     * (sauf sur un système de fichiers qui ne sait pas renommer atomiquement, où le fichier est simplement remplacé).
+     * Les poids modifiés pendant l'écriture (entraînement en cours) peuvent être enregistrés avant ou après leur modification.
+     */
+    public void save(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer content = buffer.duplicate().clear();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param board le plateau compacté, en général juste après un déplacement et avant la nouvelle case
+     * @return la valeur du plateau : l'estimation des points encore à gagner jusqu'à la fin de la partie
+     */
+    public float evaluate(long board) {
+        float value = 0;
+        for (int f = 0; f < shifts.length; f++) {
+            value += weights.get(index(board, f));
+        }
+        return value;
+    }
+
+    /**
+     * Rapproche la valeur du plateau de la valeur cible (apprentissage par différence temporelle), sans verrou
+     * @param board le plateau compacté
+     * @param target la valeur cible
+     * @param learningRate la part de l'erreur corrigée, répartie entre tous les poids lus
+     * @return l'erreur avant correction
+     */
+    public float learn(long board, float target, float learningRate) {
+        float error = target - evaluate(board);
+        float delta = learningRate * error / shifts.length;
+        for (int f = 0; f < shifts.length; f++) {
+            int i = index(board, f);
+            weights.put(i, weights.get(i) + delta);
+        }
+        return error;
+    }
+
+    /**
+     * Coup glouton du réseau : celui qui maximise les points gagnés plus la valeur du plateau obtenu
+     * @param board le plateau compacté
+     * @return la meilleure direction, ou null si plus aucun coup n'est possible
+     */
+    public Direction bestMove(long board) {
+        Direction best = null;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (Direction direction : DIRECTIONS) {
+            long after = Bitboard.move(board, direction);
+            if (after == board) {
+                continue;
+            }
+            float value = Bitboard.score(board, direction) + evaluate(after);
+            if (value > bestValue) {
+                bestValue = value;
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return le nombre de poids lus pour évaluer un plateau (n-uplets x symétries)
+     */
+    public int getFeatureCount() {
+        return shifts.length;
+    }
+
+    /**
+     * @return le nombre total de poids du réseau
+     */
+    public long getWeightCount() {
+        return weightCount(tuples);
+    }
+
+    private int index(long board, int feature) {
+        int[] featureShifts = shifts[feature];
+        int index = 0;
+        for (int k = 0; k < featureShifts.length; k++) {
+            index |= (int) ((board >>> featureShifts[k]) & 0xF) << (4 * k);
+        }
+        return offsets[feature] + index;
+    }
+
+    /**
+     * @param position une position x*4+y
+     * @param symmetry le numéro de la symétrie, de 0 (identité) à 7 : bit 2 pour le miroir sur la diagonale, bits 0 et 1 pour le nombre
+     * de quarts de tour
+     * @return la position image
+     */
+    private static int transform(int position, int symmetry) {
+        int x = position / Bitboard.SIZE;
+        int y = position % Bitboard.SIZE;
+        if ((symmetry & 4) != 0) {
+            int swap = x;
+            x = y;
+            y = swap;
+        }
+        for (int turn = 0; turn < (symmetry & 3); turn++) {
+            int rotated = Bitboard.SIZE - 1 - x;
+            x = y;
+            y = rotated;
+        }
+        return x * Bitboard.SIZE + y;
+    }
+
+    private static int headerBytes(int tupleCount) {
+        return 16 + tupleCount * (MAX_TUPLE_LENGTH + 2);
+    }
+
+    private static long weightCount(int[][] tuples) {
+        validate(tuples);
+        long count = 0;
+        for (int[] tuple : tuples) {
+            count += 1L << (4 * tuple.length);
+        }
+        return count;
+    }
+
+    private static void validate(int[][] tuples) {
+        if (tuples.length == 0) {
+            throw new IllegalArgumentException("at least one tuple is required");
+        }
+        for (int[] tuple : tuples) {
+            if (tuple.length == 0 || tuple.length > MAX_TUPLE_LENGTH) {
+                throw new IllegalArgumentException("tuple length must be between 1 and " + MAX_TUPLE_LENGTH);
+            }
+            int seen = 0;
+            for (int position : tuple) {
+                if (position < 0 || position >= Bitboard.SIZE * Bitboard.SIZE || (seen & (1 << position)) != 0) {
+                    throw new IllegalArgumentException("tuple positions must be distinct and between 0 and 15");
+                }
+                seen |= 1 << position;
+            }
+        }
+    }
+
+    private static int[][] copy(int[][] tuples) {
+        int[][] copy = new int[tuples.length][];
+        for (int t = 0; t < tuples.length; t++) {
+            copy[t] = tuples[t].clone();
+        }
+        return copy;
+    }
+}
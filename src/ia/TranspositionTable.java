@@ -0,0 +1,53 @@
+package ia;
+
+/**
+ * Table de transposition bornée et partagée entre les threads de la recherche, sans verrou.
+ * Chaque entrée occupe deux long : la clé (le plateau) xor la donnée, et la donnée (la note et la profondeur de recherche).
+ * Une lecture ne retient l'entrée que si clé xor donnée redonne bien le plateau cherché : une entrée à moitié écrite par un
+ * autre thread est ainsi simplement ignorée. Une nouvelle entrée remplace toujours l'ancienne de même indice.
+ */
+final class TranspositionTable {
+    private final long[] keys;
+    private final long[] data;
+    private final int shift;
+
+    /**
+     * @param capacityBits la table contient 2^capacityBits entrées (16 octets chacune)
+     */
+    TranspositionTable(int capacityBits) {
+        if (capacityBits < 1 || capacityBits > 30) {
+            throw new IllegalArgumentException("capacityBits must be between 1 and 30");
+        }
+        keys = new long[1 << capacityBits];
+        data = new long[1 << capacityBits];
+        shift = 64 - capacityBits;
+    }
+
+    private int index(long board) {
+        return (int) ((board * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @param board le plateau
+     * @param depth la profondeur de recherche voulue
+     * @return la note enregistrée pour ce plateau à une profondeur au moins égale, ou NaN si elle n'est pas dans la table
+     */
+    float get(long board, int depth) {
+        int i = index(board);
+        long entry = data[i];
+        if ((keys[i] ^ entry) != board || (int) entry < depth) {
+            return Float.NaN;
+        }
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+
+    /**
+     * Enregistre la note d'un plateau calculée à la profondeur donnée
+     */
+    void put(long board, int depth, float score) {
+        int i = index(board);
+        long entry = ((long) Float.floatToRawIntBits(score) << 32) | depth;
+        data[i] = entry;
+        keys[i] = board ^ entry;
+    }
+}
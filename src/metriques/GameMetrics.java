@@ -0,0 +1,217 @@
+package metriques;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures du jeu, publiées par JMX dans le serveur MBean de la plateforme sous le nom OBJECT_NAME :
+ * compteurs de coups, de fusions, de nouvelles cases, de notifications, de rafraîchissements et de commandes abandonnées, histogrammes des durées de Game.move,
+ * des écritures du tableau des scores et des rafraîchissements de la fenêtre (sur l'EDT), et jauges (fréquence des notifications,
+ * threads de chronomètre).
+ * Les compteurs sont des LongAdder et les histogrammes ne font qu'un incrément par mesure : les mesures peuvent rester actives en
+ * production, y compris dans les simulations multi-threads (où Game ne mesure la durée que d'une partie des coups). Tout ce qui coûte (sommes, percentiles, parcours des threads) est fait
+ * à la lecture.
+ */
+public final class GameMetrics implements GameMetricsMXBean {
+    public static final String OBJECT_NAME = "jeu2048:type=GameMetrics";
+    private static final String TIMER_THREAD_NAME = "game-clock";
+    private static final GameMetrics INSTANCE = new GameMetrics();
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder spawns = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder droppedInputs = new LongAdder();
+    private final AtomicInteger runningClocks = new AtomicInteger();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram scoreWriteLatency = new LatencyHistogram();
+    private final LatencyHistogram refreshLatency = new LatencyHistogram();
+    private final Rate notificationRate = new Rate(notifications);
+    private final Rate refreshRate = new Rate(refreshes);
+
+    /**
+     * Fréquence d'un compteur entre deux lectures
+     */
+    private static final class Rate {
+        private final LongAdder counter;
+        private long lastCount;
+        private long lastNanos = System.nanoTime();
+
+        Rate(LongAdder counter) {
+            this.counter = counter;
+        }
+
+        synchronized double read() {
+            long count = counter.sum();
+            long now = System.nanoTime();
+            double rate = now == lastNanos ? 0 : (count - lastCount) * 1e9 / (now - lastNanos);
+            lastCount = count;
+            lastNanos = now;
+            return Math.max(0, rate);
+        }
+    }
+
+    private GameMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            System.err.println("Publication JMX des mesures impossible : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return les mesures du jeu, publiées par JMX au premier appel
+     */
+    public static GameMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Un appel à Game.move dont la durée n'a pas été mesurée
+     * @param merged le nombre de fusions du coup
+     */
+    public void moved(int merged) {
+        moves.increment();
+        if (merged > 0) {
+            merges.add(merged);
+        }
+    }
+
+    /**
+     * Un appel à Game.move
+     * @param merged le nombre de fusions du coup
+     * @param nanos sa durée
+     */
+    public void moved(int merged, long nanos) {
+        moved(merged);
+        moveLatency.record(nanos);
+    }
+
+    public void spawned() {
+        spawns.increment();
+    }
+
+    public void notified() {
+        notifications.increment();
+    }
+
+    /**
+     * Une écriture du tableau des scores
+     * @param nanos sa durée
+     */
+    public void scoreWritten(long nanos) {
+        scoreWriteLatency.record(nanos);
+    }
+
+    /**
+     * Un rafraîchissement de la fenêtre
+     * @param nanos sa durée sur l'EDT
+     */
+    public void refreshed(long nanos) {
+        refreshes.increment();
+        refreshLatency.record(nanos);
+    }
+
+    /**
+     * Une commande de déplacement abandonnée par un GameActor en retard (répétée, ou file pleine)
+     */
+    public void inputDropped() {
+        droppedInputs.increment();
+    }
+
+    public void clockStarted() {
+        runningClocks.incrementAndGet();
+    }
+
+    public void clockStopped() {
+        runningClocks.decrementAndGet();
+    }
+
+    @Override
+    public long getMoveCount() {
+        return moves.sum();
+    }
+
+    @Override
+    public long getMergeCount() {
+        return merges.sum();
+    }
+
+    @Override
+    public long getSpawnCount() {
+        return spawns.sum();
+    }
+
+    @Override
+    public long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    @Override
+    public long getDroppedInputCount() {
+        return droppedInputs.sum();
+    }
+
+    @Override
+    public double getNotificationRate() {
+        return notificationRate.read();
+    }
+
+    @Override
+    public double getRefreshRate() {
+        return refreshRate.read();
+    }
+
+    @Override
+    public int getTimerThreadCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(TIMER_THREAD_NAME)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getRunningClockCount() {
+        return runningClocks.get();
+    }
+
+    @Override
+    public LatencySnapshot getMoveLatency() {
+        return moveLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getScoreWriteLatency() {
+        return scoreWriteLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRefreshLatency() {
+        return refreshLatency.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        moves.reset();
+        merges.reset();
+        spawns.reset();
+        notifications.reset();
+        refreshes.reset();
+        droppedInputs.reset();
+        moveLatency.reset();
+        scoreWriteLatency.reset();
+        refreshLatency.reset();
+    }
+}
@@ -0,0 +1,52 @@
+package metriques;
+
+/**
+ * Interface JMX de GameMetrics (objet "jeu2048:type=GameMetrics"), lisible avec jconsole ou VisualVM
+ */
+public interface GameMetricsMXBean {
+    long getMoveCount();
+
+    long getMergeCount();
+
+    long getSpawnCount();
+
+    long getNotificationCount();
+
+    long getRefreshCount();
+
+    /**
+     * @return le nombre de déplacements abandonnés parce que le jeu avait du retard sur le clavier
+     */
+    long getDroppedInputCount();
+
+    /**
+     * @return le nombre de notifications des observers par seconde depuis la lecture précédente
+     */
+    double getNotificationRate();
+
+    /**
+     * @return le nombre de rafraîchissements de la fenêtre par seconde depuis la lecture précédente
+     */
+    double getRefreshRate();
+
+    /**
+     * @return le nombre de threads de chronomètre vivants
+     */
+    int getTimerThreadCount();
+
+    /**
+     * @return le nombre de chronomètres qui ont des battements programmés (parties affichées en cours)
+     */
+    int getRunningClockCount();
+
+    LatencySnapshot getMoveLatency();
+
+    LatencySnapshot getScoreWriteLatency();
+
+    LatencySnapshot getRefreshLatency();
+
+    /**
+     * Remet les compteurs et les histogrammes à 0
+     */
+    void reset();
+}
@@ -0,0 +1,72 @@
+package metriques;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durées à buckets logarithmiques : le bucket i compte les durées de 2^(i-1) à 2^i - 1 nanosecondes.
+ * Enregistrer une durée ne coûte qu'un incrément de LongAdder (sans verrou ni allocation, et sans contention entre threads) ;
+ * les percentiles, calculés à la lecture, sont donc approchés à un facteur 2 près (borne haute du bucket).
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos une durée en nanosecondes (les durées négatives comptent pour 0)
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * @return l'état courant de l'histogramme (les enregistrements concurrents peuvent y être ou non)
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        double mean = count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+        return new LatencySnapshot(count, mean, percentile(counts, count, 0.5), percentile(counts, count, 0.99),
+                percentile(counts, count, 0.999), percentile(counts, count, 1));
+    }
+
+    /**
+     * @return la borne haute (en microsecondes) du bucket qui contient le percentile demandé, 0 si l'histogramme est vide
+     */
+    private static double percentile(long[] counts, long count, double fraction) {
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return i == 0 ? 0 : Math.scalb(1.0, i) / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Remet l'histogramme à 0
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalNanos.reset();
+    }
+}
@@ -0,0 +1,358 @@
+package modele;
+
+import java.util.Random;
+
+/**
+ * Moteur compact pour les grilles 4x4 : la grille entière tient dans un long, chaque case occupant 4 bits qui contiennent
+ * l'exposant de sa valeur (0 pour une case vide, 1 pour 2, 2 pour 4, ..., 15 pour 32768).
+ * La ligne x occupe les bits 16*x à 16*x+15, et dans une ligne la colonne y occupe les bits 4*y à 4*y+3.
+ *
+ * Les déplacements sont appliqués à l'aide de tables précalculées : pour chacune des 65536 lignes possibles, on stocke
+ * le résultat du déplacement vers la gauche et vers la droite. Les colonnes sont traitées avec les mêmes tables, une colonne
+ * étant lue comme une ligne dont la case x=0 est la case de gauche (haut = gauche, bas = droite).
+ */
+public final class Bitboard {
+    public static final int SIZE = 4;
+    public static final int MAX_EXPONENT = 15;
+
+    private static final long COLUMN_MASK = 0x000F000F000F000FL;
+
+    // pour chaque ligne : ligne ^ ligne déplacée, afin de pouvoir appliquer le déplacement avec un simple xor
+    private static final long[] ROW_LEFT = new long[65536];
+    private static final long[] ROW_RIGHT = new long[65536];
+    // même chose pour les colonnes, le résultat étant déjà replacé dans la colonne 0 du plateau
+    private static final long[] COL_UP = new long[65536];
+    private static final long[] COL_DOWN = new long[65536];
+    // pour chaque ligne, où va chaque case lors d'un déplacement vers la gauche : 2 bits de destination par case (bits 2*i),
+    // et un bit par case qui indique qu'elle fusionne avec la case déjà arrivée à destination (bits 8+i)
+    private static final char[] ROW_LEFT_MOVES = new char[65536];
+    // pour chaque ligne, la somme des cases formées par les fusions d'un déplacement vers la gauche et vers la droite
+    private static final int[] ROW_LEFT_SCORE = new int[65536];
+    private static final int[] ROW_RIGHT_SCORE = new int[65536];
+
+    static {
+        for (int row = 0; row < 65536; row++) {
+            int left = slideLeft(row);
+            int right = reverse(slideLeft(reverse(row)));
+            ROW_LEFT[row] = row ^ left;
+            ROW_RIGHT[row] = row ^ right;
+            COL_UP[row] = unpackColumn(row) ^ unpackColumn(left);
+            COL_DOWN[row] = unpackColumn(row) ^ unpackColumn(right);
+            ROW_LEFT_MOVES[row] = slideLeftMoves(row);
+            ROW_LEFT_SCORE[row] = slideLeftScore(row);
+            ROW_RIGHT_SCORE[row] = slideLeftScore(reverse(row));
+        }
+    }
+
+    private Bitboard() {
+    }
+
+    /**
+     * Applique le déplacement d'une ligne vers la gauche, avec les mêmes règles que le jeu : chaque case ne peut fusionner
+     * qu'une seule fois par coup. Deux cases d'exposant 15 ne fusionnent pas, le résultat ne tiendrait pas sur 4 bits.
+     * @param row la ligne sur 16 bits
+     * @return la ligne déplacée
+     */
+    private static int slideLeft(int row) {
+        int[] line = new int[SIZE];
+        int count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            int e = (row >> (4 * i)) & 0xF;
+            if (e != 0) {
+                line[count++] = e;
+            }
+        }
+
+        int result = 0;
+        int target = 0;
+        for (int i = 0; i < count; i++) {
+            int e = line[i];
+            if (i + 1 < count && line[i + 1] == e && e != MAX_EXPONENT) {
+                e++;
+                i++;
+            }
+            result |= e << (4 * target);
+            target++;
+        }
+        return result;
+    }
+
+    /**
+     * Même déplacement que slideLeft, en notant pour chaque case sa destination et si elle y fusionne (voir ROW_LEFT_MOVES)
+     */
+    private static char slideLeftMoves(int row) {
+        int moves = 0;
+        int target = 0;
+        int previous = 0;
+        for (int i = 0; i < SIZE; i++) {
+            int e = (row >> (4 * i)) & 0xF;
+            if (e == 0) {
+                continue;
+            }
+            if (previous == e && e != MAX_EXPONENT) {
+                moves |= (target - 1) << (2 * i);
+                moves |= 1 << (8 + i);
+                previous = 0;
+            } else {
+                moves |= target << (2 * i);
+                previous = e;
+                target++;
+            }
+        }
+        return (char) moves;
+    }
+
+    /**
+     * Même déplacement que slideLeft, en additionnant les valeurs des cases formées par les fusions
+     */
+    private static int slideLeftScore(int row) {
+        int score = 0;
+        int previous = 0;
+        for (int i = 0; i < SIZE; i++) {
+            int e = (row >> (4 * i)) & 0xF;
+            if (e == 0) {
+                continue;
+            }
+            if (previous == e && e != MAX_EXPONENT) {
+                score += toValue(e + 1);
+                previous = 0;
+            } else {
+                previous = e;
+            }
+        }
+        return score;
+    }
+
+    private static int reverse(int row) {
+        return ((row & 0xF) << 12) | ((row & 0xF0) << 4) | ((row >> 4) & 0xF0) | ((row >> 12) & 0xF);
+    }
+
+    private static long unpackColumn(int row) {
+        long r = row;
+        return (r & 0xF) | ((r & 0xF0) << 12) | ((r & 0xF00) << 24) | ((r & 0xF000) << 36);
+    }
+
+    /**
+     * @return la ligne x du plateau, sur 16 bits
+     */
+    public static int row(long board, int x) {
+        return (int) ((board >>> (16 * x)) & 0xFFFF);
+    }
+
+    /**
+     * @return la colonne y du plateau, lue comme une ligne sur 16 bits (la case x=0 à gauche)
+     */
+    public static int column(long board, int y) {
+        long c = (board >>> (4 * y)) & COLUMN_MASK;
+        return (int) ((c | (c >>> 12) | (c >>> 24) | (c >>> 36)) & 0xFFFF);
+    }
+
+    /**
+     * Déplace toutes les cases du plateau dans la direction donnée
+     * @param board le plateau compacté
+     * @param direction la direction du déplacement
+     * @return le plateau après déplacement (égal au plateau d'origine si rien n'a bougé), sans nouvelle case
+     */
+    public static long move(long board, Direction direction) {
+        long result = board;
+        switch (direction) {
+            case left:
+                for (int x = 0; x < SIZE; x++) {
+                    result ^= ROW_LEFT[row(board, x)] << (16 * x);
+                }
+                break;
+            case right:
+                for (int x = 0; x < SIZE; x++) {
+                    result ^= ROW_RIGHT[row(board, x)] << (16 * x);
+                }
+                break;
+            case up:
+                for (int y = 0; y < SIZE; y++) {
+                    result ^= COL_UP[column(board, y)] << (4 * y);
+                }
+                break;
+            case down:
+                for (int y = 0; y < SIZE; y++) {
+                    result ^= COL_DOWN[column(board, y)] << (4 * y);
+                }
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * @param board le plateau compacté
+     * @param direction la direction du déplacement
+     * @return les points gagnés par le déplacement : la somme des valeurs des cases formées par ses fusions
+     */
+    public static int score(long board, Direction direction) {
+        int score = 0;
+        for (int line = 0; line < SIZE; line++) {
+            switch (direction) {
+                case left:
+                    score += ROW_LEFT_SCORE[row(board, line)];
+                    break;
+                case right:
+                    score += ROW_RIGHT_SCORE[row(board, line)];
+                    break;
+                case up:
+                    score += ROW_LEFT_SCORE[column(board, line)];
+                    break;
+                default:
+                    score += ROW_RIGHT_SCORE[column(board, line)];
+                    break;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Place une nouvelle case comme Game.rnd : une case vide tirée au hasard, qui reçoit un 2 ou un 4 avec une chance sur deux chacun
+     * @param board le plateau compacté
+     * @param random le générateur
+     * @return le plateau avec la nouvelle case, inchangé s'il est plein
+     */
+    public static long spawn(long board, Random random) {
+        int empty = countEmpty(board);
+        if (empty == 0) {
+            return board;
+        }
+        int k = random.nextInt(empty);
+        int exponent = random.nextInt(2) == 0 ? 1 : 2;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            if (((board >>> (4 * i)) & 0xF) == 0 && k-- == 0) {
+                return board | ((long) exponent << (4 * i));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Enregistre dans diff le trajet de chaque case qui bouge lors du déplacement du plateau dans la direction donnée
+     * @param board le plateau avant le déplacement
+     * @param direction la direction du déplacement
+     * @param diff l'ensemble de changements à compléter
+     */
+    static void recordMoves(long board, Direction direction, MoveDiff diff) {
+        boolean horizontal = direction == Direction.left || direction == Direction.right;
+        boolean reversed = direction == Direction.right || direction == Direction.down;
+        for (int line = 0; line < SIZE; line++) {
+            int r = horizontal ? row(board, line) : column(board, line);
+            if (reversed) {
+                r = reverse(r);
+            }
+            int moves = ROW_LEFT_MOVES[r];
+            for (int k = 0; k < SIZE; k++) {
+                int e = (r >> (4 * k)) & 0xF;
+                int destination = (moves >> (2 * k)) & 3;
+                boolean merge = ((moves >> (8 + k)) & 1) != 0;
+                if (e == 0 || (!merge && destination == k)) {
+                    continue;
+                }
+                int from = reversed ? SIZE - 1 - k : k;
+                int to = reversed ? SIZE - 1 - destination : destination;
+                int fromX = horizontal ? line : from;
+                int fromY = horizontal ? from : line;
+                int toX = horizontal ? line : to;
+                int toY = horizontal ? to : line;
+                if (merge) {
+                    diff.merged(fromX, fromY, toX, toY, toValue(e + 1));
+                } else {
+                    diff.moved(fromX, fromY, toX, toY, toValue(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param game un jeu de taille 4
+     * @return true si toutes les cases du jeu sont en dessous de 32768 : elles tiennent sur 4 bits, et leurs fusions aussi, le plateau
+     * compacté suit donc exactement les règles du jeu
+     */
+    public static boolean fits(Game game) {
+        if (game.getSize() != SIZE) {
+            return false;
+        }
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (game.getCell(x, y).getExponent() >= MAX_EXPONENT) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compacte la grille d'un jeu 4x4 dans un long
+     * @param game le jeu, dont la grille doit vérifier fits(game)
+     * @return le plateau compacté
+     */
+    public static long of(Game game) {
+        if (!fits(game)) {
+            throw new IllegalArgumentException("Game must be a 4x4 board with tiles below " + toValue(MAX_EXPONENT));
+        }
+        long board = 0;
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                board = setExponent(board, x, y, toExponent(game.getCell(x, y).getValue()));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * @return l'exposant de la case (x, y) du plateau
+     */
+    public static int getExponent(long board, int x, int y) {
+        return (int) ((board >>> (16 * x + 4 * y)) & 0xF);
+    }
+
+    /**
+     * @return le plateau dont la case (x, y) a été remplacée par l'exposant donné
+     */
+    public static long setExponent(long board, int x, int y, int exponent) {
+        int shift = 16 * x + 4 * y;
+        return (board & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+
+    /**
+     * @return le nombre de cases vides du plateau
+     */
+    public static int countEmpty(long board) {
+        int count = 0;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            if (((board >>> (4 * i)) & 0xF) == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return le plus grand exposant présent sur le plateau
+     */
+    public static int maxExponent(long board) {
+        int max = 0;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            max = Math.max(max, (int) ((board >>> (4 * i)) & 0xF));
+        }
+        return max;
+    }
+
+    /**
+     * @param value la valeur d'une case (0 pour une case vide)
+     * @return l'exposant correspondant (2 -> 1, 4 -> 2, ...)
+     */
+    public static int toExponent(int value) {
+        return value == 0 ? 0 : Integer.numberOfTrailingZeros(value);
+    }
+
+    /**
+     * @param exponent l'exposant d'une case
+     * @return la valeur correspondante (0 pour une case vide)
+     */
+    public static int toValue(int exponent) {
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+}
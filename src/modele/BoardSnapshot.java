@@ -0,0 +1,88 @@
+package modele;
+
+/**
+ * Copie immuable de l'état de la grille, publiée par un jeu observé après chaque action terminée, faite à la demande sinon
+ * (voir Game.getSnapshot).
+ * Les lecteurs (affichage, solveur, mesures...) la lisent depuis n'importe quel thread, sans verrou : une copie n'est jamais
+ * modifiée après sa publication, et le jeu en publie une nouvelle au lieu de la modifier. Ils ne voient donc jamais une grille
+ * à moitié déplacée, et le jeu n'attend jamais ses lecteurs.
+ */
+public final class BoardSnapshot {
+    private final int size;
+    private final byte[] exponents;
+    private final int unlock;
+    private final boolean gameOver;
+    private final long version;
+
+    /**
+     * @param size la taille de la grille
+     * @param exponents les exposants de la grille, recopiés
+     * @param unlock le nombre de déblocages restants
+     * @param gameOver true si la partie est perdue
+     * @param version le numéro de la copie, croissant pour un même jeu
+     */
+    BoardSnapshot(int size, byte[] exponents, int unlock, boolean gameOver, long version) {
+        this.size = size;
+        this.exponents = exponents.clone();
+        this.unlock = unlock;
+        this.gameOver = gameOver;
+        this.version = version;
+    }
+
+    /**
+     * @return la taille de la grille
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param i l'indice de la ligne
+     * @param j l'indice de la colonne
+     * @return l'exposant de la case (i, j), 0 si elle est vide
+     */
+    public int getExponent(int i, int j) {
+        return exponents[i * size + j];
+    }
+
+    /**
+     * @param i l'indice de la ligne
+     * @param j l'indice de la colonne
+     * @return la cellule (partagée, voir Cell) de la case (i, j)
+     */
+    public Cell getCell(int i, int j) {
+        return Cell.ofExponent(exponents[i * size + j]);
+    }
+
+    /**
+     * @return la valeur de la plus grosse case de la grille
+     */
+    public int getMaxValue() {
+        int max = 0;
+        for (byte exponent : exponents) {
+            max = Math.max(max, exponent);
+        }
+        return Bitboard.toValue(max);
+    }
+
+    /**
+     * @return le nombre de déblocages restants
+     */
+    public int getUnlock() {
+        return unlock;
+    }
+
+    /**
+     * @return true si la partie est perdue
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * @return le numéro de la copie : deux copies d'un même jeu de même numéro sont identiques
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -1,268 +1,102 @@
 package modele;
 
 import java.awt.*;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
 
-import static java.sql.Types.NULL;
-
-public class Cell {
-    private int value;
-    private Game game;
-    private boolean isMerged;
-    private Color color;
-
-
-    /**
-     * Constructeur d'une case avec une valeur définie en paramètre
-     * @param value la valeur que l'on souhaite affecter à la case nouvellement créée
-     */
-    public Cell(int value) {
-        this.game = null;
-        this.value = value;
-        this.isMerged = false;
-    }
-
-    /**
-     * Constructeur par défaut d'une nouvelle case, on lui affecte la valeur 0
-     */
-    public Cell(){
-        this.value = NULL;
-        this.game = null;
-        this.isMerged = false;
+/**
+ * Case de la grille. Une case ne contient que sa valeur : elle ne connaît ni sa position ni son jeu, et ne change jamais.
+ * Il n'existe donc qu'une instance par valeur, partagée par toutes les grilles (Cell.EMPTY pour une case vide, Cell.of(value)
+ * ou Cell.ofExponent(exponent) pour les autres) : déplacer ou fusionner des cases ne crée aucun objet.
+ * La couleur de chaque valeur est elle aussi calculée une seule fois, à l'initialisation de la classe.
+ */
+public final class Cell {
+    public static final int MAX_EXPONENT = 30;
+
+    private static final Cell[] CELLS = new Cell[MAX_EXPONENT + 1];
+    public static final Cell EMPTY;
+
+    static {
+        Color[] palette = {
+                new Color(255, 255, 255),
+                new Color(238, 228, 218),
+                new Color(238, 225, 201),
+                new Color(243, 178, 122),
+                new Color(246, 150, 100),
+                new Color(236, 229, 29),
+                new Color(255, 150, 0),
+                new Color(200, 50, 17),
+                new Color(255, 0, 8),
+                new Color(255, 0, 100),
+                new Color(255, 0, 200),
+                new Color(138, 250, 37),
+                new Color(50, 50, 100),
+                new Color(100, 100, 100),
+                new Color(160, 160, 160),
+        };
+        for (int e = 0; e <= MAX_EXPONENT; e++) {
+            // au-delà de 16384, des teintes de plus en plus sombres
+            Color color = e < palette.length ? palette[e] : new Color(Math.max(0, 60 - 3 * (e - palette.length)), Math.max(0, 58 - 3 * (e - palette.length)), 50);
+            CELLS[e] = new Cell(e, color);
+        }
+        EMPTY = CELLS[0];
     }
 
-    /**
-     * Procédure qui va déplacer la case sur laquelle on l'appelle, dans la direction passée en paramètre.
-     * Elle ne bouge pas si elle est au bord de la grille dans la direction donnée, ou si son voisin le plus proche est collé à elle et qu'il n'a pas la même valeur
-     * Si son voisin le plus proche a la même valeur, et que ce voisin n'a pas déjà été fusionné au cours du déplacement, on appelle ces deux cellules à se fusionner
-     * Si son voisin est null, alors on déplace la case au maximum de la grille dans la direction
-     * @param direction la direction dans laquelle on souhaite déplacer la case
-     * @return true si la case a changé de position, false sinon
-     */
-    public boolean shift(Direction direction){
-        switch (direction){
-            case up :
-                if(game.getCoord(this).x != 0) {
-                    Cell cellUp = game.getNext(this, Direction.up);
-                    if (cellUp != null && cellUp.getValue() != this.getValue() && game.getDistance(this, cellUp, Direction.up) > 1) {
-                        Point oldPoint = this.game.getCoord(this);
-                        game.updateCell(this, new Point(game.getCoord(cellUp).x+1, game.getCoord(cellUp).y));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-
-                    if(cellUp != null && cellUp.getValue() == this.getValue() ){
-                        if (!cellUp.isMerged()) {
-                            game.merge(this, cellUp);
-                        }
-                        else {
-                            Point oldPoint = game.getCoord(this);
-                            game.updateCell(this, new Point(game.getCoord(cellUp).x+1, game.getCoord(cellUp).y));
-                            game.updateCell(new Cell(), oldPoint);
-                        }
-                        return true;
-                    }
-
-                    if(cellUp == null){
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(0, game.getCoord(this).y));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-
-                }
-
-                break;
-
-            case down :
-                if(game.getCoord(this).x != this.game.getSize()-1) {
-                    Cell cellDown = game.getNext(this, Direction.down);
-                    if (cellDown != null && cellDown.getValue() != this.getValue() && game.getDistance(this, cellDown, Direction.down) > 1) {
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(game.getCoord(cellDown).x-1, game.getCoord(cellDown).y));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-
-                    if(cellDown != null && cellDown.getValue() == this.getValue() ){
-                        if (!cellDown.isMerged()) {
-                            game.merge(this, cellDown);
-                        }
-                        else {
-                            Point oldPoint = game.getCoord(this);
-                            game.updateCell(this, new Point(game.getCoord(cellDown).x-1, game.getCoord(cellDown).y));
-                            game.updateCell(new Cell(), oldPoint);
-                        }
-                        return true;
-                    }
-
-                    if(cellDown == null){
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(game.getSize()-1, game.getCoord(this).y));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-                }
+    private final int exponent;
+    private final int value;
+    private final Color color;
 
-                break;
-
-            case right :
-                if(game.getCoord(this).y != this.game.getSize()) {
-                    Cell cellRight = game.getNext(this, Direction.right);
-                    if (cellRight != null && cellRight.getValue() != this.getValue() && game.getDistance(this, cellRight, Direction.right) > 1) {
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(game.getCoord(cellRight).x, game.getCoord(cellRight).y-1));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-
-                    if(cellRight != null && cellRight.getValue() == this.getValue() ){
-                        if (!cellRight.isMerged()) {
-                            game.merge(this, cellRight);
-                        }
-                        else {
-                            Point oldPoint = game.getCoord(this);
-                            game.updateCell(this, new Point(game.getCoord(cellRight).x, game.getCoord(cellRight).y - 1));
-                            game.updateCell(new Cell(), oldPoint);
-                        }
-                        return true;
-                    }
-
-                    if(cellRight == null){
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(game.getCoord(this).x, game.getSize()-1));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-                }
-
-                break;
-
-            case left :
-                if(game.getCoord(this).y != 0) {
-                    Cell cellLeft = game.getNext(this, Direction.left);
-                    if (cellLeft != null && cellLeft.getValue() != this.getValue() && game.getDistance(this, cellLeft, Direction.left) > 1) {
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(game.getCoord(cellLeft).x, game.getCoord(cellLeft).y+1));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-
-                    if(cellLeft != null && cellLeft.getValue() == this.getValue() ){
-                        if (!cellLeft.isMerged()) {
-                            game.merge(this, cellLeft);
-                        }
-                        else {
-                            Point oldPoint = game.getCoord(this);
-                            game.updateCell(this, new Point(game.getCoord(cellLeft).x, game.getCoord(cellLeft).y+1));
-                            game.updateCell(new Cell(), oldPoint);
-                        }
-                        return true;
-                    }
-
-                    if(cellLeft == null){
-                        Point oldPoint = game.getCoord(this);
-                        game.updateCell(this, new Point(game.getCoord(this).x, 0));
-                        game.updateCell(new Cell(), oldPoint);
-                        return true;
-                    }
-                }
-
-                break;
-        }
-        return false;
+    private Cell(int exponent, Color color) {
+        this.exponent = exponent;
+        this.value = exponent == 0 ? 0 : 1 << exponent;
+        this.color = color;
     }
 
     /**
-     * @return le booléen isMerged qui indique si la cellule a déjà fusionner au cours du déplacement, auquel cas elle ne peut pas fusionner une deuxième fois pendant le tour
+     * @param value la valeur de la case, 0 ou une puissance de 2
+     * @return l'unique case de cette valeur
      */
-    public boolean isMerged() {
-        return isMerged;
+    public static Cell of(int value) {
+        if (value != 0 && (value < 2 || Integer.bitCount(value) != 1)) {
+            throw new IllegalArgumentException("Cell value must be 0 or a power of 2, got " + value);
+        }
+        return CELLS[value == 0 ? 0 : Integer.numberOfTrailingZeros(value)];
     }
 
     /**
-     * set le booléen isMerged à la valeur du paramètre
-     * @param merged
+     * @param exponent l'exposant de la valeur de la case (0 pour une case vide, 1 pour 2, 2 pour 4, ...)
+     * @return l'unique case de cette valeur
      */
-    public void setMerged(boolean merged) {
-        isMerged = merged;
+    public static Cell ofExponent(int exponent) {
+        return CELLS[exponent];
     }
 
     /**
-     * @return la couleur de la case sur laquelle on appelle la méthode
+     * @return la couleur de la case (blanc pour une case vide)
      */
     public Color getColor() {
         return color;
     }
 
     /**
-     * affecte le jeu passé en paramètre à la cellule
-     * @param game le jeu que l'on souhaite affecter à la cellule
+     * @return la valeur de la case
      */
-    public void setGame(Game game) {
-        this.game = game;
+    public int getValue() {
+        return value;
     }
 
     /**
-     * Met la couleur de la case à jour, en fonction de la valeur
+     * @return l'exposant de la valeur de la case, 0 pour une case vide
      */
-    public void updateColor() {
-        switch (value) {
-            case 2:
-                color = new Color(238,228,218);
-                break;
-            case 4:
-                color = new Color(238,225,201);
-                break;
-            case 8:
-                color = new Color(243,178,122);
-                break;
-            case 16:
-                color = new Color(246,150,100);
-                break;
-            case 32:
-                color = new Color(236, 229, 29);
-                break;
-            case 64:
-                color = new Color(255, 150, 0);
-                break;
-            case 128:
-                color = new Color(200, 50, 17);
-                break;
-            case 256:
-                color = new Color(255, 0, 8);
-                break;
-            case 512:
-                color = new Color(255, 0, 100);
-                break;
-            case 1024:
-                color = new Color(255, 0, 200);
-                break;
-            case 2048:
-                color = new Color(138, 250, 37);
-                break;
-            case 4096:
-                color = new Color(50, 50, 100);
-                break;
-            case 8192:
-                color = new Color(100, 100, 100);
-                break;
-            case 16384:
-                color = new Color(160, 160, 160);
-                break;
-        }
+    public int getExponent() {
+        return exponent;
     }
 
     /**
-     * @return la valeur de la case
+     * @return true si la case est vide
      */
-    public int getValue() {
-        return value;
+    public boolean isEmpty() {
+        return exponent == 0;
     }
 
-
     /**
      * @return une chaine de caractère qui sert à afficher le jeu sous forme console
      */
@@ -1,365 +1,695 @@
 package modele;
 
+import metriques.GameMetrics;
+
 import java.awt.*;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.HashMap;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Observable;
 import java.util.Random;
-import java.util.Scanner;
-
-import static java.sql.Types.NULL;
-import static vue_controleur.Swing2048.PIXEL_PER_SQUARE;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
 
 public class Game extends Observable {
-
-    private HashMap<Cell, Point> cells;
-    private Cell[][] tabCells;
-    private static Random rnd = new Random(System.currentTimeMillis());
-    private File data = new File("score.txt");
-    private Instant instantStart;
-    private double timeElapsed;
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_SIZE = 2048;
+    // au-delà de cette taille, les observers reçoivent un MoveDiff complet plutôt que le détail de chaque case
+    public static final int MAX_DETAILED_DIFF_SIZE = 64;
+    // à partir de cette taille, les lignes d'un coup sont déplacées en parallèle (voir slide), par paquets de LINES_PER_TASK lignes
+    public static final int PARALLEL_MIN_SIZE = 256;
+    // tableau des scores des jeux affichés (voir Leaderboard)
+    public static final String SCORES_FILE = "leaderboard.bin";
+    private static final GameMetrics METRICS = GameMetrics.get();
+    // sans observer, la durée d'un coup sur LATENCY_SAMPLING est mesurée (System.nanoTime coûte autant que le coup sur une petite grille)
+    private static final int LATENCY_SAMPLING = 16;
+    private static final int LINES_PER_TASK = 32;
+
+    private final int size;
+    // exposant de chaque case (0 pour une case vide, 1 pour 2, 2 pour 4, ...), la case (x, y) étant à la position x*size+y
+    private byte[] exponents;
+    // index des cases vides : free[0..freeCount-1] contient les positions vides, dans le désordre,
+    // et freeSlot[position] la place de la position dans free (-1 si la case est occupée)
+    private int[] free;
+    private int[] freeSlot;
+    private int freeCount;
+    // nombre de paires de cases voisines (horizontalement ou verticalement) non vides et de même valeur
+    private int pairs;
+    // nombre de fusions du coup en cours, et nombre de coups depuis la dernière mesure de durée, pour les mesures
+    private int merges;
+    private int unsampledMoves;
+    // bilan du coup en cours, réutilisé d'un coup à l'autre quand le déplacement n'est pas parallèle
+    private final SlideResult slideResult = new SlideResult();
+    private Random random;
+    private final Scores scores;
+    // identifiant de la partie en cours dans le tableau des scores, renouvelé à chaque nouvelle partie
+    private long gameId;
+    // plus grosse case déjà proposée au tableau des scores pour cette partie, et temps pour 2048 déjà proposé
+    private int offeredExponent;
+    private boolean offered2048;
+    private GameClock clock;
+    // changements du coup en cours, transmis aux observers à la fin du coup (null si personne n'observe le jeu)
+    private MoveDiff diff;
     private boolean isGameOver;
     private int unlock;
     private boolean unlockRunning;
-    private Point unlockedPosition;
+    // case choisie au début d'un déblocage
+    private int unlockedX;
+    private int unlockedY;
+    // états précédents (et annulés) de la partie, pour undo et redo
+    private History history;
+    // journal de la partie, null si elle n'est pas enregistrée
+    private Journal journal;
+    // acteur qui exécute les commandes des vues et les battements du chronomètre, null si le jeu est utilisé directement
+    private volatile GameActor actor;
+    // dernière copie publiée de la grille, null si elle n'est plus à jour et n'a pas encore été refaite, voir getSnapshot
+    private volatile BoardSnapshot snapshot;
+    private long snapshotVersion;
 
 
     /**
-     * Constructeur du jeu en fonction de la taille de la grille passée en paramètre
-     * @param size entier représentant la taille de la grille du jeu
+     * Constructeur du jeu en fonction de la taille de la grille passée en paramètre, pour un jeu affiché : le chronomètre notifie
+     * les observers DEFAULT_TICK_RATE fois par seconde et les résultats sont enregistrés dans SCORES_FILE (voir Builder.displayed).
+     * La graine du générateur est gardée (getSeed), la partie peut donc être rejouée (voir Journal).
+     * @param size entier représentant la taille de la grille du jeu, entre MIN_SIZE et MAX_SIZE
      */
     public Game(int size) {
+        this(builder(size).displayed());
+    }
+
+    /**
+     * Constructeur d'un jeu sans interface, pour les simulations : aucun thread de timer n'est lancé et le fichier des scores n'est jamais lu ni écrit.
+     * Chaque jeu a son propre générateur aléatoire, ce qui permet de jouer plusieurs parties en parallèle sans contention, et de les rejouer à l'identique.
+     * @param size entier représentant la taille de la grille du jeu, entre MIN_SIZE et MAX_SIZE
+     * @param random le générateur utilisé pour placer les nouvelles cases
+     */
+    public Game(int size, Random random) {
+        this(builder(size).random(random));
+    }
+
+    private Game(Builder builder) {
+        int size = builder.size;
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Game size must be between " + MIN_SIZE + " and " + MAX_SIZE + ", got " + size);
+        }
+        Random random = builder.random != null ? builder.random : new SeededRandom(ThreadLocalRandom.current().nextLong());
+        this.size = size;
+        this.random = random;
+        this.clock = new GameClock(this::tick, builder.tickRate, builder.nanoTime);
+        this.scores = builder.scores;
         unlock = 1;
         unlockRunning = false;
         isGameOver = false;
-        this.tabCells = new Cell[size][size];
-        this.cells = new HashMap<>();
+        this.exponents = new byte[size * size];
+        this.free = new int[size * size];
+        this.freeSlot = new int[size * size];
+        this.history = new History(size * size, History.DEFAULT_MAX_BYTES);
+        newGameId();
+        clear();
 
-        for (int i = 0; i<size; i++){
-            for (int j = 0; j<size; j++){
+        rnd();
+        rnd();
+        history.reset(exponents, unlock);
+        clock.start();
+        publish();
+    }
 
-                tabCells[i][j] = new Cell();
-            }
+    /**
+     * @param size la taille de la grille, entre MIN_SIZE et MAX_SIZE
+     * @return un builder de jeu sans interface : sans battements du chronomètre (donc sans thread) et sans enregistrement des
+     * résultats (donc sans fichier), avec un générateur aléatoire à graine imprévisible
+     */
+    public static Builder builder(int size) {
+        return new Builder(size);
+    }
+
+    /**
+     * Options de construction d'un jeu. Chaque service du jeu peut y être remplacé : le générateur aléatoire, l'horloge du chronomètre
+     * et ses battements, et l'enregistrement des résultats. Par défaut le jeu ne lance aucun thread et n'ouvre aucun fichier,
+     * ce qui permet d'en construire un grand nombre (analyses, serveur) ; displayed donne les options d'un jeu affiché.
+     */
+    public static final class Builder {
+        private final int size;
+        private Random random;
+        private int tickRate;
+        private LongSupplier nanoTime = System::nanoTime;
+        private Scores scores = Scores.NONE;
+
+        private Builder(int size) {
+            this.size = size;
         }
 
-        for (int i = 0; i<size; i++){
-            for (int j = 0; j<size; j++){
-                tabCells[i][j].setGame(this);
+        /**
+         * @param random le générateur utilisé pour placer les nouvelles cases (un SeededRandom pour pouvoir rejouer la partie)
+         */
+        public Builder random(Random random) {
+            this.random = random;
+            return this;
+        }
+
+        /**
+         * @param seed la graine d'un SeededRandom, pour une partie reproductible
+         */
+        public Builder seed(long seed) {
+            return random(new SeededRandom(seed));
+        }
+
+        /**
+         * @param tickRate le nombre de notifications des observers par seconde pour l'affichage du temps, 0 (par défaut) pour aucune
+         */
+        public Builder tickRate(int tickRate) {
+            if (tickRate < 0) {
+                throw new IllegalArgumentException("tickRate must be positive");
             }
+            this.tickRate = tickRate;
+            return this;
         }
 
-        rnd();
-        rnd();
-        instantStart = Instant.now();
-        ThreadGetActualTime();
+        /**
+         * @param nanoTime l'horloge monotone du chronomètre, en nanosecondes (System.nanoTime par défaut)
+         */
+        public Builder clock(LongSupplier nanoTime) {
+            this.nanoTime = nanoTime;
+            return this;
+        }
+
+        /**
+         * @param scores l'enregistrement des résultats (Scores.NONE par défaut)
+         */
+        public Builder scores(Scores scores) {
+            this.scores = scores;
+            return this;
+        }
+
+        /**
+         * Options d'un jeu affiché : DEFAULT_TICK_RATE battements par seconde et résultats enregistrés dans SCORES_FILE
+         */
+        public Builder displayed() {
+            return tickRate(GameClock.DEFAULT_TICK_RATE).scores(ScoreStore.forFile(Paths.get(SCORES_FILE)));
+        }
+
+        public Game build() {
+            return new Game(this);
+        }
     }
 
     /**
-     * Met à jour la cellule passée en paramètre à la position passée en paramètre.
-     * Si la cellule existe déjà dans le jeu, elle est simplement remplacée dans la hashmap, sinon, elle est ajoutée dans la hashmap
-     * On appelle également updateColor, et on lui affecte le jeu courant en attribut
-     * @param cell la cellule que l'on veut mettre ou modifier
-     * @param point le point auquel on veut ajouter ou déplacer la dite cellule
+     * Place la case passée en paramètre à la position passée en paramètre, en remplaçant celle qui s'y trouvait
+     * @param cell la case que l'on veut mettre à cette position (Cell.EMPTY pour vider la position)
+     * @param point la position dans le tableau
      */
     public void updateCell(Cell cell, Point point){
         if (point.x >= getSize() | point.y >= getSize() | point.x < 0 | point.y < 0 ) {
             throw new IllegalArgumentException("Point must have coordinates inside the game board");
         }
+        setCell(point.x, point.y, cell);
+    }
 
-        setCell(cell, new Point(point.x, point.y));
-        cell.setGame(this);
-        cell.updateColor();
+    /**
+     * Cette procédure affecte une case donnée à une position donnée du tableau de cases
+     * @param x l'indice de la ligne du tableau
+     * @param y l'indice de la colonne du tableau
+     * @param cell la case que l'on souhaite affecter au tableau
+     */
+    public void setCell(int x, int y, Cell cell) {
+        put(x * size + y, cell.getExponent());
+    }
 
-        if (!cells.containsKey(cell) && cell.getValue() != 0) {
-            cells.put(getCell(point.x, point.y), point);
-        } else {
-            cells.replace(cell, getCoord(cell), point);
+    /**
+     * Écrit un exposant dans la grille, en tenant à jour l'index des cases vides et le nombre de paires de voisins égaux.
+     * Toutes les modifications de la grille passent par cette méthode.
+     * @param position la position de la case (x*size+y)
+     * @param exponent le nouvel exposant, 0 pour vider la case
+     */
+    private void put(int position, int exponent) {
+        int old = exponents[position];
+        if (old == exponent) {
+            return;
+        }
+        pairs -= pairsAround(position, old);
+        exponents[position] = (byte) exponent;
+        pairs += pairsAround(position, exponent);
+        if (old == 0) {
+            // la dernière position vide prend la place de celle qui vient d'être occupée
+            int slot = freeSlot[position];
+            int last = free[--freeCount];
+            free[slot] = last;
+            freeSlot[last] = slot;
+            freeSlot[position] = -1;
+        }
+        else if (exponent == 0) {
+            free[freeCount] = position;
+            freeSlot[position] = freeCount++;
         }
     }
 
     /**
-     * Cette méthode analyse pour chaque cellule, si son voisin direct dans toutes les directions, a une valeur égale à elle même ou non, pour déterminer s'il reste des mouvements possibles.
-     * @return false si toutes les cases adjacentes sont de valeurs différentes, true sinon.
+     * Vide la grille et remet toutes les positions dans l'index des cases vides
      */
-    private boolean hasNextMove() {
-        for (Cell cell : getCells().keySet()) {
-            if (getNext(cell, Direction.up) != null) {
-                if (getNext(cell, Direction.up).getValue() == cell.getValue()) return true;
-            }
-            if (getNext(cell, Direction.down) != null) {
-                if (getNext(cell, Direction.down).getValue() == cell.getValue()) return true;
-            }
-            if (getNext(cell, Direction.left) != null) {
-                if (getNext(cell, Direction.left).getValue() == cell.getValue()) return true;
-            }
-            if (getNext(cell, Direction.right) != null) {
-                if (getNext(cell, Direction.right).getValue() == cell.getValue()) return true;
+    private void clear() {
+        int cells = size * size;
+        for (int position = 0; position < cells; position++) {
+            exponents[position] = 0;
+            free[position] = position;
+            freeSlot[position] = position;
+        }
+        freeCount = cells;
+        pairs = 0;
+    }
+
+    /**
+     * @return le nombre de voisins directs de la position qui pourraient fusionner avec une case de cet exposant si elle y était
+     */
+    private int pairsAround(int position, int exponent) {
+        if (exponent == 0 || exponent == Cell.MAX_EXPONENT) {
+            return 0;
+        }
+        int y = position % size;
+        int count = 0;
+        if (position >= size && exponents[position - size] == exponent) count++;
+        if (position + size < size * size && exponents[position + size] == exponent) count++;
+        if (y > 0 && exponents[position - 1] == exponent) count++;
+        if (y + 1 < size && exponents[position + 1] == exponent) count++;
+        return count;
+    }
+
+    /**
+     * Détermine s'il reste des mouvements possibles : c'est le cas s'il reste une case vide, ou deux cases voisines de même valeur.
+     * Le nombre de cases vides et le nombre de paires de voisins égaux sont tenus à jour à chaque modification de la grille, la réponse est donc immédiate.
+     * @return false si la grille est pleine et que toutes les cases adjacentes sont de valeurs différentes, true sinon.
+     */
+    public boolean hasNextMove() {
+        return freeCount > 0 || pairs > 0;
+    }
+
+    /**
+     * Indique si un coup dans la direction donnée ferait bouger au moins une case, sans modifier la grille : une ligne peut bouger si une case
+     * suit une case vide, ou si deux cases qui se suivent ont la même valeur (dans le sens du déplacement).
+     * @param direction la direction du coup
+     * @return true si move(direction) ferait bouger au moins une case
+     */
+    public boolean canMove(Direction direction) {
+        if (unlockRunning) {
+            return false;
+        }
+        int step = step(direction);
+        for (int line = 0; line < size; line++) {
+            int position = lineStart(direction, line);
+            boolean hole = false;
+            int previous = 0;
+            for (int k = 0; k < size; k++, position += step) {
+                int exponent = exponents[position];
+                if (exponent == 0) {
+                    hole = true;
+                } else {
+                    if (hole || (exponent == previous && exponent != Cell.MAX_EXPONENT)) {
+                        return true;
+                    }
+                    previous = exponent;
+                }
             }
         }
         return false;
     }
 
     /**
-     * Méthode principale qui est appelée lorsque l'on appuie sur une flèche dans l'interface du jeu, elle bouge les cases en appelant successivement la méthode shift sur chaque cellule, de la plus proche du bord
-     * à la plus éloignée. Elle initialise un booléen hasMoved à false, qui ne passe à true que si au moins une case a pu bouger. Si aucune case n'a bougé, rien ne se passe, sinon, on peut appeler la fonction rnd()
+     * @return les directions dans lesquelles un coup ferait bouger au moins une case (vide si la partie est perdue)
+     */
+    public Set<Direction> legalMoves() {
+        EnumSet<Direction> moves = EnumSet.noneOf(Direction.class);
+        for (Direction direction : Direction.values()) {
+            if (canMove(direction)) {
+                moves.add(direction);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Méthode principale qui est appelée lorsque l'on appuie sur une flèche dans l'interface du jeu, elle fait glisser chaque ligne (ou colonne) de la grille dans la direction donnée,
+     * de la case la plus proche du bord à la plus éloignée. Si aucune case n'a bougé, rien ne se passe, sinon, on peut appeler la fonction rnd()
      * qui va placer une nouvelle case au hasard après avoir fait le déplacement de toutes les cases déjà présentes sur la grille. On verifie ensuite qu'un mouvement est possible avec la nouvelle grille, en faisant
-     * appel, si le nombre de cellules présentes est égal à la taille de la grille, à la méthode hasNextMove(), le cas échéant, on passe le booléen gameOver à false.
+     * appel à la méthode hasNextMove(), le cas échéant, on passe le booléen gameOver à true.
      * Elle n'effectue ces actions que si le processus d'échange entre deux cases n'est pas en cours (ie. on empêche d'appuyer sur les flèches si le bouton de souris est enfoncé sur une case de la grille)
+     * Le déplacement ne crée aucun objet : il travaille directement sur le tableau des exposants.
      * @param direction La direction vers laquelle on veut envoyer les cases (qui correspond à la direction de la flèche sur laquelle on a appuyé)
+     * Les observers reçoivent en argument un MoveDiff qui décrit le trajet de chaque case, les fusions et la nouvelle case (un MoveDiff complet
+     * pour les grilles de plus de MAX_DETAILED_DIFF_SIZE cases de côté).
+     * @return true si au moins une case a bougé (et donc qu'une nouvelle case a été placée)
      */
-    public void move(Direction direction){
+    public boolean move(Direction direction){
+        boolean observed = countObservers() > 0;
+        boolean sampled = observed || ++unsampledMoves == LATENCY_SAMPLING;
+        long start = sampled ? System.nanoTime() : 0;
         boolean hasMoved = false;
+        merges = 0;
+        diff = observed && size <= MAX_DETAILED_DIFF_SIZE ? new MoveDiff(size) : null;
 
-        if(!unlockRunning) {
-            switch (direction) {
-                case up:
-                    for (int y = 0; y<getSize(); y++){
-                        for (int x = 1; x<getSize(); x++){
-                            Cell cell = getCell(x, y);
-                            if(cell.getValue() != NULL) {
-                                if (cell.shift(Direction.up)){
-                                    hasMoved = true;
-                                }
-                            }
-
-                        }
-                    }
-
-                    break;
-
-                case down:
-                    for (int y = 0; y<getSize(); y++){
-                        for (int x = getSize()-2; x>=0; x--){
-                            Cell cell = getCell(x, y);
-                            if(cell.getValue() != NULL) {
-                                if (cell.shift(Direction.down)){
-                                    hasMoved = true;
-                                }
-                            }
-                        }
-                    }
-
-                    break;
-
-                case right:
-                    for (int x = 0; x<getSize(); x++){
-                        for (int y = getSize()-2; y>= 0; y--){
-                            Cell cell = getCell(x, y);
-                            if (cell.getValue() != NULL) {
-                                if (cell.shift(Direction.right)){
-                                    hasMoved = true;
-                                }
-                            }
-
-                        }
-                    }
-
-                    break;
-
-                case left:
-                    for (int x = 0; x<getSize(); x++){
-                        for (int y = 1; y<getSize(); y++){
-                            Cell cell = getCell(x, y);
-                            if (cell.getValue() != NULL) {
-                                if (cell.shift(Direction.left)){
-                                    hasMoved = true;
-                                }
-                            }
-                        }
-                    }
-
-                    break;
-            }
+        if(!unlockRunning && Bitboard.fits(this)) {
+            hasMoved = moveBitboard(direction);
+        }
+        else if(!unlockRunning) {
+            hasMoved = slide(direction);
         }
 
-
-        if (hasMoved == true) {
-            for (Cell cell: getCells().keySet()){
-                cell.setMerged(false);
-            }
+        if (hasMoved) {
             rnd();
+            history.record(exponents, unlock);
+            if (journal != null) {
+                journal.moved(direction);
+            }
         }
 
-        if (this.getCells().keySet().size() == getSize()*getSize() && !hasNextMove()){
+        if (!hasNextMove()){
             isGameOver = true;
-            setChanged();
-            notifyObservers();
+            clock.stop();
+        }
+        MoveDiff changes = diff;
+        diff = null;
+        if (hasMoved || isGameOver) {
+            publish();
+            if (observed) {
+                setChanged();
+                notifyObservers(changes != null ? changes : MoveDiff.full(size));
+            }
+        }
+        if (sampled) {
+            unsampledMoves = 0;
+            METRICS.moved(merges, System.nanoTime() - start);
+        } else {
+            METRICS.moved(merges);
         }
+        return hasMoved;
     }
 
     /**
-     * Fonction qui tire au hasard une case dans le tableau (jusqu'à trouver une case libre), puis tire au hasard une valeur pour y ajouter une nouvelle cellule, de la valeur en question.
+     * Notifie les observers si le jeu a changé, en comptant la notification dans les mesures (voir GameMetrics)
      */
-    public void rnd() {
+    @Override
+    public void notifyObservers(Object arg) {
+        if (hasChanged() && countObservers() > 0) {
+            METRICS.notified();
+        }
+        super.notifyObservers(arg);
+    }
 
-        int r, x, y;
+    /**
+     * Fait glisser toutes les lignes de la grille dans la direction donnée.
+     * Sur les grandes grilles (au moins PARALLEL_MIN_SIZE lignes) non observées en détail, les lignes, indépendantes les unes des autres,
+     * sont réparties entre les threads du pool fork-join commun ; l'index des cases vides et le nombre de paires sont alors recalculés
+     * en parallèle après le déplacement, plutôt que tenus à jour case par case. Le choix ne dépend que de la taille de la grille, et pas du nombre
+     * de coeurs, pour qu'une partie rejouée avec la même graine place ses nouvelles cases aux mêmes endroits sur toutes les machines.
+     * Le fichier des scores n'est mis à jour qu'une fois, à la fin du coup, avec la plus grosse case formée (et une case 2048 si
+     * une a été formée sans être la plus grosse).
+     * @param direction la direction du déplacement
+     * @return true si au moins une case a bougé
+     */
+    private boolean slide(Direction direction) {
+        SlideResult result;
+        if (size >= PARALLEL_MIN_SIZE && diff == null) {
+            result = ForkJoinPool.commonPool().invoke(new SlideTask(direction, 0, size));
+            if (result.moved) {
+                reindex();
+            }
+        } else {
+            result = slideResult;
+            result.clear();
+            slideLines(direction, 0, size, result, false);
+        }
 
-        x = rnd.nextInt(getSize());
-        y = rnd.nextInt(getSize());
-        while(tabCells[x][y].getValue() != NULL) {
-            x = rnd.nextInt(getSize());
-            y = rnd.nextInt(getSize());
+        merges = result.merges;
+        if (result.merges > 0) {
+            updateFile(Cell.ofExponent(result.maxMerged));
+            if (result.merged2048 && result.maxMerged != 11) {
+                updateFile(Cell.ofExponent(11));
+            }
         }
-        r = rnd.nextInt(2);
+        return result.moved;
+    }
 
+    /**
+     * Fait glisser les lignes fromLine à toLine-1. Chaque ligne est parcourue depuis le bord vers lequel on pousse : target est la prochaine
+     * position libre, previous l'exposant de la dernière case posée (0 si elle vient de fusionner, une case ne fusionnant qu'une fois par coup).
+     * @param raw true pour écrire directement dans le tableau des exposants, sans tenir à jour l'index des cases vides ni le nombre de paires
+     * (les lignes sont alors traitées en parallèle, voir reindex)
+     */
+    private void slideLines(Direction direction, int fromLine, int toLine, SlideResult result, boolean raw) {
+        int step = step(direction);
+        for (int line = fromLine; line < toLine; line++) {
+            int start = lineStart(direction, line);
+            int target = start;
+            int previous = 0;
+            for (int k = 0, position = start; k < size; k++, position += step) {
+                int exponent = exponents[position];
+                if (exponent == 0) {
+                    continue;
+                }
+                if (exponent == previous && exponent != Cell.MAX_EXPONENT) {
+                    int to = target - step;
+                    write(to, exponent + 1, raw);
+                    write(position, 0, raw);
+                    if (diff != null) {
+                        diff.merged(position / size, position % size, to / size, to % size, Bitboard.toValue(exponent + 1));
+                    }
+                    result.merges++;
+                    result.maxMerged = Math.max(result.maxMerged, exponent + 1);
+                    result.merged2048 |= exponent + 1 == 11;
+                    previous = 0;
+                    result.moved = true;
+                } else {
+                    if (target != position) {
+                        write(target, exponent, raw);
+                        write(position, 0, raw);
+                        if (diff != null) {
+                            diff.moved(position / size, position % size, target / size, target % size, Bitboard.toValue(exponent));
+                        }
+                        result.moved = true;
+                    }
+                    previous = exponent;
+                    target += step;
+                }
+            }
+        }
+    }
 
-        switch (r) {
-            case 0:
-                updateCell(new Cell(2), new Point(x, y));
-                break;
-            case 1:
-                updateCell(new Cell(4), new Point(x, y));
-                break;
+    private void write(int position, int exponent, boolean raw) {
+        if (raw) {
+            exponents[position] = (byte) exponent;
+        } else {
+            put(position, exponent);
         }
+    }
 
-        updateFile(getCell(x, y));
+    /**
+     * Reconstruit l'index des cases vides et le nombre de paires de voisins égaux à partir du tableau des exposants, après un déplacement parallèle
+     * ou le retour à un état de l'historique. L'index est alors trié par position, ce qui rend le tirage des nouvelles cases reproductible
+     * à partir de la seule grille (le journal s'en sert à chaque image clé).
+     * La grille est découpée en bandes de lignes : chaque bande compte ses cases vides et ses paires, puis, une fois les places de chaque bande
+     * dans free connues, remplit sa partie de l'index. Les bandes ne sont traitées en parallèle que sur les grandes grilles.
+     */
+    void reindex() {
+        int bands = (size + LINES_PER_TASK - 1) / LINES_PER_TASK;
+        int[] empties = new int[bands];
+        int[] bandPairs = new int[bands];
+        bands(bands).forEach(band -> {
+            int end = Math.min(size, (band + 1) * LINES_PER_TASK) * size;
+            int count = 0;
+            int equal = 0;
+            for (int position = band * LINES_PER_TASK * size; position < end; position++) {
+                int exponent = exponents[position];
+                if (exponent == 0) {
+                    count++;
+                } else if (exponent != Cell.MAX_EXPONENT) {
+                    if (position % size + 1 < size && exponents[position + 1] == exponent) equal++;
+                    if (position + size < size * size && exponents[position + size] == exponent) equal++;
+                }
+            }
+            empties[band] = count;
+            bandPairs[band] = equal;
+        });
+
+        int[] offsets = new int[bands];
+        int total = 0;
+        int totalPairs = 0;
+        for (int band = 0; band < bands; band++) {
+            offsets[band] = total;
+            total += empties[band];
+            totalPairs += bandPairs[band];
+        }
 
+        bands(bands).forEach(band -> {
+            int end = Math.min(size, (band + 1) * LINES_PER_TASK) * size;
+            int slot = offsets[band];
+            for (int position = band * LINES_PER_TASK * size; position < end; position++) {
+                if (exponents[position] == 0) {
+                    free[slot] = position;
+                    freeSlot[position] = slot++;
+                } else {
+                    freeSlot[position] = -1;
+                }
+            }
+        });
+        freeCount = total;
+        pairs = totalPairs;
     }
 
-    /** Retourne la valeur, dans la hashmap, associée à la clé passée en paramètre
-     * @param cell la case dont on souhaite connaitre les coordonnées dans le jeu
-     * @return le Point2D où se situe la case que l'on cherche
-     */
-    public Point getCoord(Cell cell) {
-        return this.getCells().get(cell);
+    private IntStream bands(int bands) {
+        IntStream stream = IntStream.range(0, bands);
+        return size >= PARALLEL_MIN_SIZE ? stream.parallel() : stream;
     }
 
     /**
-     * Cette procédure vient mettre à jour la case que l'on souhaite supprimer, en remplacer cette case à sa position par une nouvelle case de valeur nulle dans le tableau,
-     * puis elle est supprimée de la hashmap
-     * @param cell la case que l'on souhaite supprimer du tableau et de la hashmap
+     * Bilan du déplacement d'un ensemble de lignes
      */
-    public void deleteCell(Cell cell) {
-        updateCell(new Cell(), getCoord(cell));
-        cells.remove(cell);
+    private static final class SlideResult {
+        boolean moved;
+        int merges;
+        int maxMerged;
+        boolean merged2048;
+
+        void clear() {
+            moved = false;
+            merges = 0;
+            maxMerged = 0;
+            merged2048 = false;
+        }
+
+        SlideResult add(SlideResult other) {
+            moved |= other.moved;
+            merges += other.merges;
+            maxMerged = Math.max(maxMerged, other.maxMerged);
+            merged2048 |= other.merged2048;
+            return this;
+        }
     }
 
     /**
-     * Cette procédure sert à fusionner deux cases passées en paramètre, en créant une nouvelle cellule de valeur doublée, pui en supprimant chacune des deux cases passées
-     * en paramètre. On place ensuite la cellule nouvellement créée dans le tableau et la hashmap, avant de lui signifier qu'elle a été fusionnée (et qu'elle ne peut plus être
-     * fusionnée à nouveau dans la suite du coup)
-     * On met ensuite à jour le fichier en appelant updateFile.
-     * @param cell1
-     * @param cell2
+     * Déplacement des lignes fromLine à toLine-1, coupé en deux tant qu'il reste plus de LINES_PER_TASK lignes
      */
-    public void merge(Cell cell1, Cell cell2){
-        Cell mergedCell = new Cell(cell1.getValue()*2);
-        Point cellPoint = new Point(getCoord(cell2).x, getCoord(cell2).y);
+    private final class SlideTask extends RecursiveTask<SlideResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final Direction direction;
+        private final int fromLine;
+        private final int toLine;
 
-        deleteCell(cell1);
-        deleteCell(cell2);
-        updateCell(mergedCell, cellPoint);
+        SlideTask(Direction direction, int fromLine, int toLine) {
+            this.direction = direction;
+            this.fromLine = fromLine;
+            this.toLine = toLine;
+        }
 
-        mergedCell.setMerged(true);
-        updateFile(getCell(getCoord(mergedCell).x, getCoord(mergedCell).y));
+        @Override
+        protected SlideResult compute() {
+            if (toLine - fromLine <= LINES_PER_TASK) {
+                SlideResult result = new SlideResult();
+                slideLines(direction, fromLine, toLine, result, true);
+                return result;
+            }
+            int middle = (fromLine + toLine) >>> 1;
+            SlideTask left = new SlideTask(direction, fromLine, middle);
+            left.fork();
+            SlideResult right = new SlideTask(direction, middle, toLine).compute();
+            return right.add(left.join());
+        }
     }
 
     /**
-     *Cette procédure sert à retourner le voisin le plus proche de la case passée en paramètre, dans la direction passée en paramètre
-     * @param cell la case dont on veut connaître le voisin
-     * @param direction la direction dans laquelle on veut connaître son voisin
-     * @return la cellule non nulle la plus proche dans la direction choisie, ou null si cette case n'a aucun voisin dans cette direction
+     * @return la position de la première case de la ligne line, du côté du bord vers lequel on pousse
      */
-    public Cell getNext(Cell cell, Direction direction){
+    private int lineStart(Direction direction, int line) {
         switch (direction) {
-            case up:
-                if (getCoord(cell).x == 0) {
-                    return null;
-                }
-                else {
-                    for (int x=getCoord(cell).x; x>0; x--){
-                        Cell nextUp = getCell(x-1, getCoord(cell).y);
-                        if(nextUp.getValue() != NULL) {
-                            return nextUp;
-                        }
-
-                    }
-                    return null;
-                }
-
-            case down:
-                if (getCoord(cell).x == getSize()-1) {
-                    return null;
-                }
-                else {
-                    for (int x=getCoord(cell).x; x<getSize()-1; x++){
-                        Cell nextDown = getCell(x+1, getCoord(cell).y);
-                        if(nextDown.getValue() != NULL) {
-                            return nextDown;
-                        }
+            case left: return line * size;
+            case right: return line * size + size - 1;
+            case up: return line;
+            default: return (size - 1) * size + line;
+        }
+    }
 
-                    }
-                    return null;
-                }
+    /**
+     * @return l'écart de position entre deux cases successives d'une ligne, en s'éloignant du bord vers lequel on pousse
+     */
+    private int step(Direction direction) {
+        switch (direction) {
+            case left: return 1;
+            case right: return -1;
+            case up: return size;
+            default: return -size;
+        }
+    }
 
-            case left:
-                if (getCoord(cell).y == 0) {
-                    return null;
-                }
-                else {
-                    for (int y=getCoord(cell).y; y>0; y--){
-                        Cell nextLeft = getCell(getCoord(cell).x, y-1);
-                        if(nextLeft.getValue() != NULL) {
-                            return nextLeft;
-                        }
+    /**
+     * Déplacement d'une grille 4x4 à l'aide des tables précalculées de Bitboard. Seules les cases dont la valeur a changé
+     * sont remplacées dans le tableau. Le fichier des scores n'est mis à jour que si la plus grosse case a grandi
+     * ou si une nouvelle case 2048 est apparue.
+     * @param direction la direction du déplacement
+     * @return true si au moins une case a bougé
+     */
+    private boolean moveBitboard(Direction direction) {
+        long before = Bitboard.of(this);
+        long after = Bitboard.move(before, direction);
+        if (after == before) {
+            return false;
+        }
+        if (diff != null) {
+            Bitboard.recordMoves(before, direction, diff);
+        }
 
+        merges = Bitboard.countEmpty(after) - Bitboard.countEmpty(before);
+        int maxBefore = Bitboard.maxExponent(before);
+        int newMax = 0;
+        int count2048 = 0;
+        for (int x = 0; x < Bitboard.SIZE; x++) {
+            for (int y = 0; y < Bitboard.SIZE; y++) {
+                int exponent = Bitboard.getExponent(after, x, y);
+                if (exponent != Bitboard.getExponent(before, x, y)) {
+                    put(x * size + y, exponent);
+                    if (exponent > maxBefore) {
+                        newMax = exponent;
+                        maxBefore = exponent;
                     }
-                    return null;
-                }
-
-            case right:
-                if (getCoord(cell).y == getSize()-1) {
-                    return null;
                 }
-                else {
-                    for (int y = getCoord(cell).y; y<getSize()-1; y++){
-                        Cell nextRight = getCell(getCoord(cell).x, y+1);
-                        if(nextRight.getValue() != NULL) {
-                            return nextRight;
-                        }
+                if (exponent == 11) count2048++;
+                if (Bitboard.getExponent(before, x, y) == 11) count2048--;
+            }
+        }
 
-                    }
-                    return null;
-                }
+        if (newMax != 0) {
+            updateFile(Cell.ofExponent(newMax));
         }
-        return null;
+        else if (count2048 > 0) {
+            updateFile(Cell.ofExponent(11));
+        }
+        return true;
     }
 
     /**
-     * Cette procédure retourne la distance, selon une direction, depuis la case cellStart jusqu'à la case cellEnd.
-     * @param cellStart la case de départ pour calculer notre distance
-     * @param cellEnd la case d'arrivée
-     * @param direction la direction dans laquelle on souhaite calculer notre distance
-     * @return la distance dans la direction donnée entre les deux cases (getDistance( (2,2), (3,4), down) renverra 3-2 = 1)
+     * Fonction qui tire au hasard une case libre dans l'index des cases vides (un seul tirage, quel que soit le remplissage de la grille), puis tire au hasard une valeur pour y ajouter une nouvelle cellule, de la valeur en question.
+     * Ne fait rien si la grille est pleine.
      */
-    public int getDistance(Cell cellStart, Cell cellEnd, Direction direction) {
-        switch (direction){
-            case up:
-                return getCoord(cellStart).x - getCoord(cellEnd).x;
-
-            case down:
-                return getCoord(cellEnd).x - getCoord(cellStart).x;
+    public void rnd() {
+        if (freeCount == 0) {
+            return;
+        }
 
-            case right:
-                return getCoord(cellEnd).y - getCoord(cellStart).y;
+        int position = free[random.nextInt(freeCount)];
+        int r = random.nextInt(2);
 
-            case left:
-                return getCoord(cellStart).y - getCoord(cellEnd).y;
+        int exponent = r == 0 ? 1 : 2;
+        put(position, exponent);
+        METRICS.spawned();
+        if (diff != null) {
+            diff.spawned(position / size, position % size, Bitboard.toValue(exponent));
         }
-        return -1;
-    }
 
-    /**
-     * Cette procédure affecte une case donnée à une position donnée du tableau de cases
-     * @param cell la case que l'on souhaite affecter au tableau
-     * @param point l'endroit dans le tableau où l'on souhaite affecter la case
-     */
-    public void setCell(Cell cell, Point point){
-        tabCells[point.x][point.y] = cell;
+        updateFile(Cell.ofExponent(exponent));
+
     }
 
     /**
@@ -373,7 +703,7 @@ public class Game extends Observable {
         for (int i = 0; i < getSize(); i++) {
             stringBuilder.append("  | ");
             for (int j = 0; j < getSize(); j++) {
-                stringBuilder.append(tabCells[i][j] + " ");
+                stringBuilder.append(getCell(i, j) + " ");
             }
             stringBuilder.append("|" + "\n");
         }
@@ -381,172 +711,345 @@ public class Game extends Observable {
     }
 
     /**
-     * @return l'attribut hashMap qui contient les cellules du jeu
+     * @return le nombre de cases non vides de la grille
      */
-    public HashMap<Cell, Point> getCells() {
-        return this.cells;
+    public int getTileCount() {
+        return size * size - freeCount;
     }
 
     /**
      * @return la taille du tableau de jeu, autrement dit, la dimension du jeu (ex: retourne 4 si le jeu est un 4x4)
      */
     public int getSize() {
-        return tabCells.length;
+        return size;
+    }
+
+    /**
+     * @return la valeur de la plus grosse case de la grille
+     */
+    public int getMaxValue() {
+        int max = 0;
+        for (byte exponent : exponents) {
+            max = Math.max(max, exponent);
+        }
+        return Bitboard.toValue(max);
     }
 
     /**
      * @param i l'indice de la ligne du tableau
      * @param j l'indice de la colonne du tableau
-     * @return la cellule stockée dans le tableau à l'indice (i, j)
+     * @return la cellule (partagée, voir Cell) qui correspond à l'exposant stocké à l'indice (i, j)
      */
     public Cell getCell(int i, int j) {
-        return tabCells[i][j];
+        return Cell.ofExponent(exponents[i * size + j]);
+    }
+
+    /**
+     * @param i l'indice de la ligne du tableau
+     * @param j l'indice de la colonne du tableau
+     * @return l'exposant de la case (i, j), 0 si elle est vide
+     */
+    public int getExponent(int i, int j) {
+        return exponents[i * size + j];
     }
 
     /**
-     * Methode qui supprime le fichier data passé en attribut de la classe Game, et qui va implicitement écraser les données sauvegardées pour le meilleur temps et le meilleur score
+     * Remet à 0 le meilleur temps et le meilleur score de ce type de partie (taille et nombre de déblocages), et vide son tableau des scores
      */
     public void resetBestScore() {
-        try {
-
-            if (data.delete()) {
-                System.out.println(data.getName() + " est supprimé.");
-            } else {
-                System.out.println("Opération de suppression echouée");
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        scores.reset(size, unlock);
     }
 
     /**
-     * @return le fichier data passé en argument de la classe
+     * @return le fichier des scores, null si les résultats ne sont pas enregistrés dans un ScoreStore
      */
     public File getFile() {
-        return this.data;
+        return scores instanceof ScoreStore ? ((ScoreStore) scores).getFile().toFile() : null;
     }
 
     /**
-     * Cette méthode regarde d'abord si le fichier data (argument de la classe) existe, et si c'est le cas, elle va regarder la première ligne de ce fichier qui
-     * correspond à l'endroit où est stocké le meilleur score sous forme d'entier
-     * @return la première ligne du fichier data s'il existe, 0 sinon.
+     * Le meilleur score est celui de ce type de partie (taille et nombre de déblocages), gardé en mémoire par le ScoreStore.
+     * Comme les deux méthodes suivantes, elle peut être appelée par une vue : le nombre de déblocages est lu dans la dernière copie
+     * publiée de la grille (voir getSnapshot), jamais pendant un coup.
+     * @return le meilleur score enregistré, 0 s'il n'y en a pas
      */
     public int getBestScore() {
-        if (data.exists()) {
-            try {
-                Scanner scanner = new Scanner(data);
-                if (scanner.hasNextLine())
-                    return Integer.parseInt(scanner.nextLine());
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
-        return 0;
+        return scores.getBestScore(size, getSnapshot().getUnlock());
     }
 
     /**
-     * Cette methode regarde, si le fichier data existe, la deuxième ligne correspondant à l'endroit où est stocké le meilleur temps pour atteindre 2048.
-     * @return le double correspondant au meilleur temps pour gagner le jeu (en secondes), 0 si ce score n'a jamais été atteint.
+     * @return le double correspondant au meilleur temps pour gagner le jeu (en secondes) sur ce type de partie, 0 si ce score n'a jamais été atteint.
      */
     public double getBestTime() {
+        return scores.getBestTime(size, getSnapshot().getUnlock());
+    }
 
-        if (data.exists()) {
-            try {
-                Scanner scanner = new Scanner(data);
-                if (scanner.hasNextLine())
-                    scanner.nextLine();
-                if (scanner.hasNextLine()) return Double.parseDouble(scanner.nextLine());
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
-        return 0;
+    /**
+     * Demande les meilleurs résultats de ce type de partie, sans attendre leur lecture (voir Scores.top)
+     * @return les résultats, du meilleur au moins bon (vides pour un jeu sans interface)
+     */
+    public CompletableFuture<List<Leaderboard.Entry>> getLeaderboard() {
+        return scores.top(size, getSnapshot().getUnlock());
     }
 
     /**
      * @return double représentant le temps passé depuis l'initialisation du jeu, en secondes avec 3 flottants (pour le stockage du meilleur temps)
      */
     public double getTimeElapsedMillis() {
-        return timeElapsed/1000.0;
+        return clock.getElapsedMillis()/1000.0;
     }
 
     /**
      * @return entier représentant le temps passé depuis l'initialisation du jeu, en secondes (pour l'affichage dans l'interface)
      */
     public int getTimeElapsed() {
-        return (int)timeElapsed/1000;
+        return (int) (clock.getElapsedMillis()/1000);
+    }
+
+    /**
+     * Change le nombre de rafraîchissements par seconde de l'affichage du temps (10 par défaut, 0 pour aucun).
+     * Le temps lui-même est toujours exact, il est calculé à chaque lecture.
+     * @param tickRate le nombre de notifications des observers par seconde tant que la partie est en cours
+     */
+    public void setTickRate(int tickRate) {
+        clock.setTickRate(tickRate);
+    }
+
+    /**
+     * Arrête définitivement le chronomètre du jeu, lorsqu'il n'est plus affiché (par exemple quand la fenêtre passe à une autre taille de grille)
+     */
+    public void dispose() {
+        clock.stop();
     }
 
     /**
-     * Met à jour l'attribut timeElapsed (synchronized pour qu'un seul thread n'y accède à la fois) en calculant la durée entre l'instant où le jeu a commencé (initialisé au debut du jeu),
-     * et l'instant actuel, puis notifie l'observer pour qu'il mette à jour sur la fenêtre le temps écoulé.
+     * Appelée par le chronomètre à chaque battement, tant que la partie n'est pas terminée : notifie l'observer (sans argument, la grille n'a pas changé)
+     * pour qu'il mette à jour sur la fenêtre le temps écoulé. Si le jeu a un acteur, la notification est faite par l'acteur, entre deux commandes.
      */
-    private synchronized void setTimeElapsed() {
-        Instant instantStop = Instant.now();
-        timeElapsed = Duration.between(instantStart, instantStop).toMillis();
+    private void tick() {
+        GameActor actor = this.actor;
+        if (actor != null) {
+            actor.tick();
+        } else {
+            fireTick();
+        }
+    }
+
+    void fireTick() {
         setChanged();
         notifyObservers();
     }
 
     /**
-     * Utilise un thread qui, tant que la partie n'est pas terminée (gameOver à true), va appeler setTimeElapsed pour mettre à jour le temps écoulé depuis le début du jeu
+     * Attache un acteur au jeu (null pour le détacher), voir GameActor
      */
-    private void ThreadGetActualTime() {
-        new Thread() {
-            public synchronized void run() {
-                while (!isGameOver) {
-                    setTimeElapsed();
-
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }.start();
+    void setActor(GameActor actor) {
+        this.actor = actor;
     }
 
     /**
      * Cette méthode remet le jeu à 0 afin de recommencer une nouvelle partie, on vide la grille, on remet deux cases aléatoires, et on recommence le timer à 0
+     * L'historique repart de cette nouvelle grille : on ne peut pas annuler un redémarrage.
+     * Les observers reçoivent un MoveDiff complet (toute la grille a changé)
      */
     public void restart() {
         isGameOver = false;
         int size=this.getSize();
-        this.cells.clear();
+        newGameId();
+        clear();
 
-        for (int i = 0; i<size; i++){
-            for (int j = 0; j<size; j++){;
-                tabCells[i][j] = new Cell(NULL);
-            }
+        rnd();
+        rnd();
+        history.reset(exponents, unlock);
+        if (journal != null) {
+            journal.restarted();
+        }
+        clock.start();
+        publish();
+        if (countObservers() > 0) {
+            setChanged();
+            notifyObservers(MoveDiff.full(size));
+        }
+    }
+
+    /**
+     * @return la graine du générateur, qui permet de rejouer la partie
+     * @throws IllegalStateException si le jeu a été créé avec un autre générateur qu'un SeededRandom
+     */
+    public long getSeed() {
+        if (!(random instanceof SeededRandom)) {
+            throw new IllegalStateException("Game random is not a SeededRandom");
         }
+        return ((SeededRandom) random).getSeed();
+    }
+
+    /**
+     * @return le générateur du jeu si c'est un SeededRandom, null sinon
+     */
+    SeededRandom seededRandom() {
+        return random instanceof SeededRandom ? (SeededRandom) random : null;
+    }
+
+    /**
+     * @return le tableau des exposants lui-même (à ne pas modifier), pour les journaux et les sauvegardes
+     */
+    byte[] exponents() {
+        return exponents;
+    }
+
+    /**
+     * @return l'index des cases vides lui-même (à ne pas modifier) : ses freeCount() premières places, dans l'ordre où rnd les tire
+     */
+    int[] freeIndex() {
+        return free;
+    }
+
+    /**
+     * @return le nombre de cases vides
+     */
+    int freeCount() {
+        return freeCount;
+    }
+
+    /**
+     * Remplace la grille et le nombre de déblocages (relecture d'un journal), sans toucher à l'historique
+     * @param board les exposants de la nouvelle grille
+     * @param unlock le nombre de déblocages
+     */
+    void load(byte[] board, int unlock) {
+        System.arraycopy(board, 0, exponents, 0, exponents.length);
+        restore(unlock);
+    }
 
-        for (int i = 0; i<size; i++){
-            for (int j = 0; j<size; j++){
-                tabCells[i][j].setGame(this);
+    /**
+     * Remet le jeu dans un état sauvegardé (voir GameSave) : grille, déblocages, temps écoulé et fin de partie.
+     * L'historique repart de cet état, et le chronomètre repart du temps sauvegardé (arrêté si la partie était perdue).
+     * L'index des cases vides reprend l'ordre sauvegardé : la partie reprise place ses nouvelles cases comme l'aurait fait la partie
+     * sauvegardée, et son journal reste rejouable.
+     * @param board les exposants de la grille
+     * @param freeOrder les positions des cases vides dans l'ordre de l'index (toutes, chacune une fois), null pour l'ordre de reindex
+     * @param unlock le nombre de déblocages restants
+     * @param elapsedMillis le temps écoulé, en millisecondes
+     */
+    void resume(byte[] board, int[] freeOrder, int unlock, long elapsedMillis) {
+        System.arraycopy(board, 0, exponents, 0, exponents.length);
+        this.unlock = unlock;
+        unlockRunning = false;
+        reindex();
+        if (freeOrder != null) {
+            for (int slot = 0; slot < freeCount; slot++) {
+                free[slot] = freeOrder[slot];
+                freeSlot[freeOrder[slot]] = slot;
             }
         }
+        history.reset(exponents, unlock);
+        newGameId();
+        isGameOver = !hasNextMove();
+        clock.start(elapsedMillis);
+        if (isGameOver) {
+            clock.stop();
+        }
+        publish();
+        if (countObservers() > 0) {
+            setChanged();
+            notifyObservers(MoveDiff.full(size));
+        }
+    }
 
-        rnd();
-        rnd();
-        instantStart = Instant.now();
-        ThreadGetActualTime();
+    /**
+     * @return le temps écoulé en millisecondes, pour les sauvegardes
+     */
+    long getElapsedMillis() {
+        return clock.getElapsedMillis();
+    }
+
+    /**
+     * Attache un journal au jeu (null pour le détacher), voir Journal.create
+     */
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return true s'il y a un coup (ou un échange) à annuler
+     */
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    /**
+     * @return true s'il y a un coup annulé à rétablir
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Annule le dernier coup ou le dernier échange : la grille et le nombre de déblocages reviennent à leur état précédent
+     * (le chronomètre, lui, continue). Sans effet pendant un échange en cours.
+     * @return true si un coup a été annulé
+     */
+    public boolean undo() {
+        if (unlockRunning || !history.canUndo()) {
+            return false;
+        }
+        restore(history.undo(exponents));
+        if (journal != null) {
+            journal.state();
+        }
+        return true;
+    }
+
+    /**
+     * Rétablit le dernier coup annulé, avec la même nouvelle case qu'à l'origine
+     * @return true si un coup a été rétabli
+     */
+    public boolean redo() {
+        if (unlockRunning || !history.canRedo()) {
+            return false;
+        }
+        restore(history.redo(exponents));
+        if (journal != null) {
+            journal.state();
+        }
+        return true;
+    }
+
+    /**
+     * Termine le retour à un état de l'historique, dont les cases viennent d'être recopiées dans le tableau des exposants
+     * @param unlock le nombre de déblocages de cet état
+     */
+    private void restore(int unlock) {
+        this.unlock = unlock;
+        reindex();
+        if (!isGameOver && !hasNextMove()) {
+            isGameOver = true;
+            clock.stop();
+        }
+        else if (isGameOver && hasNextMove()) {
+            isGameOver = false;
+            clock.resume();
+        }
+        publish();
+        if (countObservers() > 0) {
+            setChanged();
+            notifyObservers(MoveDiff.full(size));
+        }
     }
 
     /**
-     * Cette méthode vient stocker les coordonnées de la case sur laquelle on a cliqué (à l'enfoncement) dans l'attribut unlockedPosition, aux coordonnées sur la fenêtre passées en paramètres.
-     * Elle passe l'attribut booleen unlockRunning à false, qui signifie que l'on est en train de déclencher un déblocage (et ce jusqu'à ce que le clic soit relaché sur une autre position)
-     * @param mouseX les coordonnées en X du clic sur la fenêtre
-     * @param mouseY les coordonnées en Y du clic sur la fenêtre
+     * Cette méthode vient stocker les coordonnées de la case choisie (à l'enfoncement du clic) dans les attributs unlockedX et unlockedY.
+     * Elle passe l'attribut booleen unlockRunning à true, qui signifie que l'on est en train de déclencher un déblocage (et ce jusqu'à ce que le clic soit relaché sur une autre position)
+     * Ne fait rien si la case est hors de la grille ou s'il ne reste aucun déblocage.
+     * @param x l'indice de la ligne de la case choisie
+     * @param y l'indice de la colonne de la case choisie
      */
-    public void setUnlocked(int mouseX, int mouseY) {
-        int tabX = (mouseY-35)/PIXEL_PER_SQUARE;
-        int tabY = mouseX/PIXEL_PER_SQUARE;
-        if (tabX<getSize() && tabY<getSize()) {
+    public void setUnlockedCell(int x, int y) {
+        if (x >= 0 && y >= 0 && x < getSize() && y < getSize()) {
             if (unlock > 0 && !unlockRunning) {
                 unlockRunning = true;
-                unlockedPosition = new Point(tabX, tabY);
+                unlockedX = x;
+                unlockedY = y;
             }
         }
     }
@@ -557,78 +1060,121 @@ public class Game extends Observable {
      */
     public void setUnlock(int a) {
         unlock = a;
+        if (journal != null) {
+            journal.unlockChanged(a);
+        }
         restart();
     }
 
     /**
-     * Cette méthode, appelée au relachement d'un clic, va échanger la case aux coordonnées stockées dans l'attribut unlockedPosition, affecté au moment de la pression du clic, avec la case aux coordonnées
-     * passées en paramètres, en vérifiant que l'on est actuellement dans la démarche de déblocage (unlockRunning à true), puis si le bouton à été relaché dans une case du tableau, et enfin si cette case est différente
-     * de celle sur laquelle le clic a été enclenché. Une fois tout cela vérifié, on peut décrémenter de 1 le compteur de déblocage "unlock", puis on échange les positions des deux cellules avec la méthode updateCell.
+     * @return le nombre de déblocages restants
+     */
+    public int getUnlock() {
+        return unlock;
+    }
+
+    /**
+     * Change le nombre de déblocages sans redémarrer (relecture d'un journal, où le redémarrage est un enregistrement à part)
+     */
+    void setUnlockCount(int unlock) {
+        this.unlock = unlock;
+    }
+
+    /**
+     * Cette méthode, appelée au relachement d'un clic, va échanger la case choisie par setUnlockedCell au moment de la pression du clic, avec la case
+     * passée en paramètre, en vérifiant que l'on est actuellement dans la démarche de déblocage (unlockRunning à true), puis si le bouton à été relaché dans une case du tableau, et enfin si cette case est différente
+     * de celle sur laquelle le clic a été enclenché. Une fois tout cela vérifié, on peut décrémenter de 1 le compteur de déblocage "unlock", puis on échange les positions des deux cellules.
      * On regarde ensuite, dans le cas où la grille est pleine, si nous étions en gameOver et que l'on s'est débloqué, alors la partie peut reprendre son cours en repassant l'attribut gameOver à false, et on notifie l'observer
-     * @param mouseX les coordonnées en X du clic sur la fenêtre
-     * @param mouseY les coordonnées en Y du clic sur la fenêtre
+     * avec un MoveDiff qui contient l'échange
+     * @param x l'indice de la ligne de la case sur laquelle le clic a été relaché
+     * @param y l'indice de la colonne de la case sur laquelle le clic a été relaché
      */
-    public void switchPosition(int mouseX, int mouseY) {
-        int tabX = (mouseY-35)/PIXEL_PER_SQUARE;
-        int tabY = mouseX/PIXEL_PER_SQUARE;
+    public void switchCell(int x, int y) {
+        MoveDiff changes = new MoveDiff(getSize());
         if (unlockRunning) {
-            if (tabX < getSize() && tabY < getSize()) {
-                if (tabX != unlockedPosition.x || tabY != unlockedPosition.y) {
+            if (x >= 0 && y >= 0 && x < getSize() && y < getSize()) {
+                if (x != unlockedX || y != unlockedY) {
                     unlock -= 1;
-                    Cell unlocked =null;
-                    unlocked = getCell(unlockedPosition.x, unlockedPosition.y);
-                    updateCell(getCell(tabX, tabY), new Point(unlockedPosition.x, unlockedPosition.y));
-                    updateCell(unlocked, new Point(tabX, tabY));
+                    int unlocked = exponents[unlockedX * size + unlockedY];
+                    put(unlockedX * size + unlockedY, exponents[x * size + y]);
+                    put(x * size + y, unlocked);
+                    changes.swapped(unlockedX, unlockedY, x, y);
+                    history.record(exponents, unlock);
+                    if (journal != null) {
+                        journal.swapped(unlockedX, unlockedY, x, y);
+                    }
                 }
             }
         }
-        unlockedPosition = null;
         unlockRunning = false;
 
-        if (this.getCells().keySet().size() == getSize() * getSize() ) {
-            if (!isGameOver && !hasNextMove()) {
-                isGameOver = true;
-            }
-            else if (isGameOver && hasNextMove()) {
-                isGameOver = false;
-                ThreadGetActualTime();
-            }
+        if (!isGameOver && !hasNextMove()) {
+            isGameOver = true;
+            clock.stop();
+        }
+        else if (isGameOver && hasNextMove()) {
+            isGameOver = false;
+            clock.resume();
         }
 
+        publish();
         setChanged();
-        notifyObservers();
+        notifyObservers(changes);
     }
 
     /**
-     * Met à jour le fichier des scores.
-     * On enregistre d'abord les données du fichiers dans des variables, puis on compare le meilleur score avec la valeur de la cellule,
-     * et si on est sur une case 2048, on compare le meilleur temps avec le temps actuel, puis on restock ces meilleures valeurs dans le fichier
+     * Met à jour le résultat de la partie dans le tableau des scores avec la cellule passée en paramètre : plus grosse case si elle la bat,
+     * et temps pour atteindre 2048 si c'est la première case 2048 de la partie. Rien n'est fait si la case ne change pas le résultat de la partie,
+     * sinon le fichier est écrit hors du thread appelant (voir ScoreStore).
      * @param cell la cellule sur laquelle on veut mettre à jour le fichier
      */
     public void updateFile(Cell cell) {
-        int score = getBestScore();
-        double time = getBestTime();
-
-        if (score < cell.getValue() || cell.getValue() == 2048) {
-            try {
-                PrintWriter writer1 = new PrintWriter(data);
-                if (score > cell.getValue()) {
-                    writer1.println(score);
-                }
-                else {
-                    writer1.println(cell.getValue());
-                }
-                if (cell.getValue() == 2048 && (getTimeElapsedMillis() < time || time == 0.0) ) {
-                    writer1.println(getTimeElapsedMillis());
-                }
-                else {
-                    writer1.println(time);
-                }
-                writer1.flush();
-                writer1.close();
-            } catch (FileNotFoundException ex) {
-                System.err.println("error");
-            }
+        boolean first2048 = cell.getValue() == 2048 && !offered2048;
+        if (cell.getExponent() > offeredExponent || first2048) {
+            offeredExponent = Math.max(offeredExponent, cell.getExponent());
+            offered2048 |= first2048;
+            scores.offer(size, unlock, gameId, cell.getValue(), getTimeElapsedMillis());
+        }
+    }
+
+    /**
+     * Commence une nouvelle partie dans le tableau des scores
+     */
+    private void newGameId() {
+        gameId = ThreadLocalRandom.current().nextLong();
+        offeredExponent = 0;
+        offered2048 = false;
+    }
+
+    /**
+     * Dernière copie immuable de la grille, lisible sans verrou (voir BoardSnapshot).
+     * Quand le jeu a des observers, une copie est publiée à la fin de chaque action qui change la grille (coup, échange, annulation,
+     * redémarrage, reprise), avant leur notification : ils la lisent depuis n'importe quel thread, et voient toujours la grille entre
+     * deux actions, jamais pendant. Sans observer (simulation, entraînement, serveur), rien n'est recopié pendant les coups :
+     * la copie est faite ici à la demande, et ne doit donc être demandée que par le thread qui joue (ou quand il ne joue pas),
+     * comme une vue qui la lit avant de s'abonner au jeu.
+     * Les changements case par case (setCell) ne sont publiés qu'à l'action suivante.
+     * @return la dernière copie publiée
+     */
+    public BoardSnapshot getSnapshot() {
+        BoardSnapshot current = snapshot;
+        if (current == null) {
+            current = new BoardSnapshot(size, exponents, unlock, isGameOver, snapshotVersion);
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Publie une copie de l'état courant de la grille, appelée uniquement par le thread qui modifie le jeu.
+     * Sans observer, la copie précédente est seulement oubliée : un coup sans lecteur n'alloue rien, et getSnapshot refera la copie.
+     */
+    private void publish() {
+        snapshotVersion++;
+        if (countObservers() > 0) {
+            snapshot = new BoardSnapshot(size, exponents, unlock, isGameOver, snapshotVersion);
+        } else if (snapshot != null) {
+            snapshot = null;
         }
     }
 
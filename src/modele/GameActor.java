@@ -0,0 +1,227 @@
+package modele;
+
+import metriques.GameMetrics;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Fil d'exécution unique d'une partie : les vues ne modifient plus le jeu elles-mêmes, elles déposent leurs commandes dans une file,
+ * exécutées une à une par le thread de l'acteur (les battements du chronomètre passent aussi par lui, voir Game.tick).
+ * Déposer une commande ne bloque jamais : l'EDT reste libre même pendant une écriture des scores ou une recherche du solveur.
+ * Seuls les déplacements sont bornés. Quand le jeu prend du retard (touche maintenue à la fréquence de répétition du système) :
+ * un déplacement identique au dernier déplacement en attente est abandonné, de même que tout déplacement qui arrive alors que
+ * capacity commandes attendent déjà. Le retard de l'affichage sur le clavier est donc borné à capacity coups.
+ * Les autres commandes (restart, undo, sauvegarde...) ne sont jamais abandonnées : elles prennent si besoin la place du plus ancien
+ * déplacement en attente, et s'ajoutent à la file quand elle n'en contient plus. Elles viennent de clics ou de touches non répétées,
+ * et leur nombre en attente n'est pas borné.
+ */
+public class GameActor {
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * Une commande en attente : un déplacement (direction non nulle) ou une autre action
+     */
+    private static final class Command {
+        final Direction direction;
+        final Runnable action;
+        // pour un déplacement : exécutée s'il ne change rien, ou s'il est abandonné après avoir été accepté (peut être null)
+        final Runnable unchanged;
+
+        Command(Direction direction, Runnable action, Runnable unchanged) {
+            this.direction = direction;
+            this.action = action;
+            this.unchanged = unchanged;
+        }
+
+        Command(Direction direction, Runnable action) {
+            this(direction, action, null);
+        }
+    }
+
+    private final Game game;
+    private final int capacity;
+    private final ExecutorService executor;
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    // true si le thread de l'acteur a une vidange de la file en cours ou programmée
+    private boolean draining;
+    // true si un battement attend déjà dans la file : les suivants sont inutiles
+    private boolean tickPending;
+
+    /**
+     * @param game le jeu, qui ne doit plus être modifié que par cet acteur
+     * @param capacity le nombre maximal de commandes en attente
+     */
+    public GameActor(Game game, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.game = game;
+        this.capacity = capacity;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "game-actor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        game.setActor(this);
+    }
+
+    public GameActor(Game game) {
+        this(game, DEFAULT_CAPACITY);
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Demande un déplacement
+     * @return false si le déplacement a été abandonné : identique au dernier déplacement en attente, ou file pleine
+     */
+    public boolean move(Direction direction) {
+        return move(direction, null);
+    }
+
+    /**
+     * Demande un déplacement, comme move(direction)
+     * @param unchanged exécutée par l'acteur si le déplacement n'a rien changé (le jeu ne notifie alors pas ses observers), ou null
+     * @return false si le déplacement a été abandonné : identique au dernier déplacement en attente, ou file pleine
+     */
+    public boolean move(Direction direction, Runnable unchanged) {
+        synchronized (this) {
+            Command last = queue.peekLast();
+            if (last != null && last.direction == direction) {
+                GameMetrics.get().inputDropped();
+                return false;
+            }
+            if (queue.size() >= capacity) {
+                GameMetrics.get().inputDropped();
+                return false;
+            }
+            queue.addLast(new Command(direction, unchanged == null ? () -> game.move(direction) : () -> {
+                if (!game.move(direction)) {
+                    unchanged.run();
+                }
+            }, unchanged));
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Demande une action sur le jeu (autre qu'un déplacement), qui n'est jamais abandonnée. Si la file est pleine, le plus ancien
+     * déplacement en attente est abandonné à sa place ; s'il n'y en a aucun, la file dépasse capacity.
+     */
+    public void execute(Runnable action) {
+        synchronized (this) {
+            if (queue.size() >= capacity) {
+                evictMove();
+            }
+            queue.addLast(new Command(null, action));
+        }
+        drain();
+    }
+
+    /**
+     * Demande une action dont le résultat est attendu (par exemple par la console, qui n'est pas un thread d'interface)
+     * @return le résultat, disponible quand l'action a été exécutée par l'acteur
+     */
+    public <T> CompletableFuture<T> call(Supplier<T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(action.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Battement du chronomètre : les observers sont notifiés par l'acteur, entre deux commandes. Un battement qui arrive alors
+     * qu'un autre attend encore est ignoré.
+     */
+    void tick() {
+        synchronized (this) {
+            if (tickPending) {
+                return;
+            }
+            tickPending = true;
+            queue.addLast(new Command(null, () -> {
+                synchronized (this) {
+                    tickPending = false;
+                }
+                game.fireTick();
+            }));
+        }
+        drain();
+    }
+
+    /**
+     * Retire le plus ancien déplacement en attente, pour faire de la place à une commande qui ne doit pas être abandonnée
+     */
+    private void evictMove() {
+        for (Command command : queue) {
+            if (command.direction != null) {
+                queue.remove(command);
+                GameMetrics.get().inputDropped();
+                if (command.unchanged != null) { // celui qui l'a demandé attend sa fin : elle lui est signalée à sa place
+                    queue.addLast(new Command(null, command.unchanged));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Programme la vidange de la file sur le thread de l'acteur, si elle n'est pas déjà en cours
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            // acteur fermé : les commandes ne sont plus exécutées
+        }
+    }
+
+    /**
+     * Exécute les commandes, sur le thread de l'acteur, jusqu'à ce que la file soit vide
+     */
+    private void run() {
+        while (true) {
+            Command command;
+            synchronized (this) {
+                command = queue.pollFirst();
+                if (command == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                command.action.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Arrête l'acteur après les commandes en attente, et rend au jeu ses battements directs
+     */
+    public void close() {
+        execute(() -> game.setActor(null));
+        executor.shutdown();
+    }
+}
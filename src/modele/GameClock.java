@@ -0,0 +1,151 @@
+package modele;
+
+import metriques.GameMetrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Chronomètre d'une partie. Le temps écoulé n'est pas mis à jour en continu : il est calculé à chaque lecture à partir
+ * d'une horloge monotone en nanosecondes (System.nanoTime par défaut), sans compter les périodes où le chronomètre est arrêté.
+ * Pour l'affichage, le chronomètre appelle onTick à intervalle régulier tant qu'il tourne. Ces appels sont faits par
+ * un unique thread partagé par tous les chronomètres, et un chronomètre n'a jamais plus d'une tâche programmée.
+ */
+public class GameClock {
+    public static final int DEFAULT_TICK_RATE = 10;
+
+    private static ScheduledExecutorService scheduler;
+
+    private final Runnable onTick;
+    private final LongSupplier nanoTime;
+    private int tickRate;
+    private long accumulatedNanos;
+    private long runningSince;
+    private boolean running;
+    private ScheduledFuture<?> ticks;
+
+    /**
+     * @param onTick l'action appelée à chaque battement tant que le chronomètre tourne
+     * @param tickRate le nombre de battements par seconde, 0 pour n'en avoir aucun
+     */
+    public GameClock(Runnable onTick, int tickRate) {
+        this(onTick, tickRate, System::nanoTime);
+    }
+
+    /**
+     * @param onTick l'action appelée à chaque battement tant que le chronomètre tourne
+     * @param tickRate le nombre de battements par seconde, 0 pour n'en avoir aucun
+     * @param nanoTime l'horloge monotone lue pour mesurer le temps, en nanosecondes (par exemple une horloge simulée)
+     */
+    public GameClock(Runnable onTick, int tickRate, LongSupplier nanoTime) {
+        this.onTick = onTick;
+        this.tickRate = tickRate;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Thread commun à tous les chronomètres, créé au premier battement programmé
+     */
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "game-clock");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Remet le chronomètre à 0 et le démarre
+     */
+    public void start() {
+        start(0);
+    }
+
+    /**
+     * Démarre le chronomètre à partir d'un temps déjà écoulé (reprise d'une partie sauvegardée)
+     * @param elapsedMillis le temps écoulé au démarrage, en millisecondes
+     */
+    public synchronized void start(long elapsedMillis) {
+        accumulatedNanos = TimeUnit.MILLISECONDS.toNanos(elapsedMillis);
+        runningSince = nanoTime.getAsLong();
+        running = true;
+        schedule();
+    }
+
+    /**
+     * Arrête le chronomètre, le temps écoulé reste figé jusqu'au prochain resume
+     */
+    public synchronized void stop() {
+        if (running) {
+            accumulatedNanos += nanoTime.getAsLong() - runningSince;
+            running = false;
+        }
+        cancel();
+    }
+
+    /**
+     * Relance le chronomètre arrêté, sans le remettre à 0
+     */
+    public synchronized void resume() {
+        if (!running) {
+            runningSince = nanoTime.getAsLong();
+            running = true;
+            schedule();
+        }
+    }
+
+    /**
+     * @return le temps écoulé en millisecondes
+     */
+    public synchronized long getElapsedMillis() {
+        long nanos = accumulatedNanos;
+        if (running) {
+            nanos += nanoTime.getAsLong() - runningSince;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return true si le chronomètre tourne
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Change la fréquence des battements, prise en compte immédiatement si le chronomètre tourne
+     * @param tickRate le nombre de battements par seconde, 0 pour n'en avoir aucun
+     */
+    public synchronized void setTickRate(int tickRate) {
+        if (tickRate < 0) {
+            throw new IllegalArgumentException("tickRate must be positive");
+        }
+        this.tickRate = tickRate;
+        if (running) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        cancel();
+        if (tickRate > 0) {
+            long period = TimeUnit.SECONDS.toNanos(1) / tickRate;
+            ticks = scheduler().scheduleAtFixedRate(onTick, period, period, TimeUnit.NANOSECONDS);
+            GameMetrics.get().clockStarted();
+        }
+    }
+
+    private void cancel() {
+        if (ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+            GameMetrics.get().clockStopped();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package modele;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sauvegarde binaire d'une partie en cours, pour la reprendre plus tard sans rejouer ses coups.
+ * Format (HEADER_BYTES octets puis la grille) : "2048SAVE", version, taille de la grille, nombre de déblocages restants,
+ * nombre de cases vides, temps écoulé en millisecondes, graine et état du générateur, puis les exposants des cases (un octet par case,
+ * dans l'ordre de Game), puis les positions des cases vides dans l'ordre de l'index de Game (2 octets par case vide, 4 au-delà de
+ * 65536 cases). Avec l'état du générateur, cet ordre fait placer à la partie reprise les mêmes nouvelles cases qu'à la partie sauvegardée.
+ * Une grille 4x4 tient donc en 64 octets, plus 2 par case vide. La fin de partie n'est pas écrite, elle se déduit de la grille.
+ * Les sauvegardes de la version 1, sans l'ordre des cases vides, sont encore lues (les cases vides sont alors rangées dans l'ordre de la grille).
+ * L'historique (undo/redo) n'est pas sauvegardé : la partie reprise repart de l'état sauvegardé.
+ */
+public final class GameSave {
+    static final long MAGIC = 0x3230343853415645L;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 48;
+    static final int SIZE_OFFSET = 12;
+    static final int EMPTY_OFFSET = 20;
+
+    private GameSave() {
+    }
+
+    /**
+     * @param size la taille de la grille
+     * @param empty le nombre de cases vides
+     * @return la taille en octets de la sauvegarde d'une partie de cette taille
+     */
+    public static int byteSize(int size, int empty) {
+        return HEADER_BYTES + size * size + empty * positionBytes(size);
+    }
+
+    /**
+     * @return la taille en octets d'une position de case
+     */
+    private static int positionBytes(int size) {
+        return size * size <= 1 << 16 ? 2 : 4;
+    }
+
+    /**
+     * Écrit la sauvegarde de la partie dans le buffer, à partir de sa position courante
+     * @param game la partie, dont le générateur doit être un SeededRandom
+     * @param buffer un buffer avec au moins byteSize(game.getSize(), game.freeCount()) octets restants
+     */
+    public static void write(Game game, ByteBuffer buffer) {
+        SeededRandom random = game.seededRandom();
+        if (random == null) {
+            throw new IllegalArgumentException("Game must use a SeededRandom to be saved");
+        }
+        buffer.putLong(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(game.getSize());
+        buffer.putInt(game.getUnlock());
+        buffer.putInt(game.freeCount());
+        buffer.putLong(game.getElapsedMillis());
+        buffer.putLong(random.getSeed());
+        buffer.putLong(random.getState());
+        buffer.put(game.exponents());
+        int[] free = game.freeIndex();
+        boolean shortPositions = positionBytes(game.getSize()) == 2;
+        for (int slot = 0; slot < game.freeCount(); slot++) {
+            if (shortPositions) {
+                buffer.putShort((short) free[slot]);
+            } else {
+                buffer.putInt(free[slot]);
+            }
+        }
+    }
+
+    /**
+     * Écrit la sauvegarde de la partie dans le channel, en une seule écriture si le channel le permet
+     */
+    public static void write(Game game, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(byteSize(game.getSize(), game.freeCount()));
+        write(game, buffer);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Sauvegarde la partie dans un fichier. La sauvegarde est d'abord écrite à côté puis renommée : le fichier contient toujours
+     * une sauvegarde complète, l'ancienne ou la nouvelle (sauf sur un système de fichiers qui ne sait pas renommer atomiquement,
+     * où le fichier est simplement remplacé).
+     */
+    public static void write(Game game, Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            write(game, channel);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Lit une sauvegarde à partir de la position courante du buffer
+     * @param headless true pour un jeu sans interface (voir Game(int, Random)), false pour un jeu affiché
+     * @return la partie reprise, dans l'état sauvegardé
+     * @throws IOException si le buffer ne contient pas une sauvegarde valide
+     */
+    public static Game read(ByteBuffer buffer, boolean headless) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getLong() != MAGIC) {
+            throw new IOException("Not a 2048 save");
+        }
+        int version = buffer.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported save version " + version);
+        }
+        int size = buffer.getInt();
+        int unlock = buffer.getInt();
+        int empty = buffer.getInt();
+        long elapsedMillis = buffer.getLong();
+        long seed = buffer.getLong();
+        long state = buffer.getLong();
+        if (size < Game.MIN_SIZE || size > Game.MAX_SIZE || unlock < 0 || elapsedMillis < 0 || buffer.remaining() < size * size) {
+            throw new IOException("Corrupted save");
+        }
+        byte[] board = new byte[size * size];
+        buffer.get(board);
+        int boardEmpty = 0;
+        for (byte exponent : board) {
+            if (exponent < 0 || exponent > Cell.MAX_EXPONENT) {
+                throw new IOException("Corrupted save: exponent " + exponent);
+            }
+            if (exponent == 0) {
+                boardEmpty++;
+            }
+        }
+        int[] freeOrder = version == 1 ? null : readFreeOrder(buffer, board, size, empty, boardEmpty);
+        SeededRandom random = new SeededRandom(seed);
+        Game.Builder builder = Game.builder(size).random(random);
+        Game game = (headless ? builder : builder.displayed()).build();
+        game.resume(board, freeOrder, unlock, elapsedMillis);
+        random.setState(state);
+        return game;
+    }
+
+    /**
+     * Lit l'ordre des cases vides, qui doit contenir chaque case vide de la grille une fois et une seule
+     */
+    private static int[] readFreeOrder(ByteBuffer buffer, byte[] board, int size, int empty, int boardEmpty) throws IOException {
+        if (empty != boardEmpty || buffer.remaining() < empty * positionBytes(size)) {
+            throw new IOException("Corrupted save");
+        }
+        boolean shortPositions = positionBytes(size) == 2;
+        boolean[] seen = new boolean[board.length];
+        int[] order = new int[empty];
+        for (int slot = 0; slot < empty; slot++) {
+            int position = shortPositions ? Short.toUnsignedInt(buffer.getShort()) : buffer.getInt();
+            if (position < 0 || position >= board.length || board[position] != 0 || seen[position]) {
+                throw new IOException("Corrupted save: free cell " + position);
+            }
+            seen[position] = true;
+            order[slot] = position;
+        }
+        return order;
+    }
+
+    /**
+     * Lit une sauvegarde dans le channel, jusqu'à sa fin ou jusqu'à la fin de la grille et de ses cases vides
+     */
+    public static Game read(ReadableByteChannel channel, boolean headless) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, buffer);
+        int size = buffer.getInt(SIZE_OFFSET);
+        int empty = buffer.getInt(EMPTY_OFFSET);
+        if (buffer.getLong(0) == MAGIC && size >= Game.MIN_SIZE && size <= Game.MAX_SIZE && empty >= 0 && empty <= size * size) {
+            int length = buffer.getInt(8) == 1 ? byteSize(size, 0) : byteSize(size, empty);
+            buffer = ByteBuffer.allocate(length).put(buffer.flip());
+            readFully(channel, buffer);
+        }
+        return read(buffer.flip(), headless);
+    }
+
+    public static Game read(Path file, boolean headless) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel, headless);
+        }
+    }
+
+    /**
+     * Reprend la partie sauvegardée dans le fichier, ou en commence une nouvelle s'il n'y en a pas (ou si elle est illisible)
+     * @param file le fichier de sauvegarde
+     * @param size la taille de la nouvelle partie
+     * @return un jeu affiché
+     */
+    public static Game resume(Path file, int size) {
+        try {
+            return read(file, false);
+        } catch (NoSuchFileException e) {
+            return new Game(size);
+        } catch (IOException e) {
+            System.err.println("Reprise de la partie " + file + " impossible : " + e.getMessage());
+            return new Game(size);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+    }
+}
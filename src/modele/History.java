@@ -0,0 +1,99 @@
+package modele;
+
+/**
+ * Historique des états d'une partie pour annuler et rétablir les coups.
+ * Chaque état est stocké sous forme compacte : les exposants des cases (un octet par case, dans l'ordre de Game) et le nombre de
+ * déblocages restants. Les états sont rangés à la suite dans un unique tableau d'octets utilisé comme buffer circulaire : quand le
+ * budget en octets est atteint, les états les plus anciens sont écrasés. Annuler ou rétablir ne fait que déplacer un indice et recopier
+ * un état, quelle que soit la longueur de l'historique.
+ * Pour une grille 4x4, 100 000 coups tiennent dans 2 Mo.
+ */
+class History {
+    static final long DEFAULT_MAX_BYTES = 8L << 20;
+
+    // octets par état : les cases, puis le nombre de déblocages
+    private final int stateBytes;
+    // nombre maximal d'états gardés
+    private final int capacity;
+    private byte[] states;
+    // indices absolus (l'état i est à la place i % capacity) du plus ancien état gardé, de l'état courant et du plus récent
+    private long first;
+    private long current;
+    private long last;
+
+    /**
+     * @param cells le nombre de cases de la grille
+     * @param maxBytes la place maximale occupée par l'historique (au moins deux états sont toujours gardés)
+     */
+    History(int cells, long maxBytes) {
+        this.stateBytes = cells + 1;
+        this.capacity = (int) Math.max(2, Math.min(Integer.MAX_VALUE / stateBytes, maxBytes / stateBytes));
+        this.states = new byte[stateBytes * Math.min(capacity, 64)];
+    }
+
+    /**
+     * Vide l'historique, qui ne contient plus que l'état donné
+     */
+    void reset(byte[] exponents, int unlock) {
+        first = 0;
+        current = 0;
+        last = 0;
+        write(0, exponents, unlock);
+    }
+
+    /**
+     * Ajoute l'état qui suit l'état courant, et oublie les états qui avaient été annulés
+     */
+    void record(byte[] exponents, int unlock) {
+        current++;
+        last = current;
+        if (last - first >= capacity) {
+            first = last - capacity + 1;
+        }
+        write(current, exponents, unlock);
+    }
+
+    boolean canUndo() {
+        return current > first;
+    }
+
+    boolean canRedo() {
+        return current < last;
+    }
+
+    /**
+     * Revient à l'état précédent, qui doit exister (canUndo)
+     * @param exponents le tableau où recopier les cases de cet état
+     * @return le nombre de déblocages de cet état
+     */
+    int undo(byte[] exponents) {
+        return read(--current, exponents);
+    }
+
+    /**
+     * Revient à l'état suivant, qui doit exister (canRedo)
+     * @param exponents le tableau où recopier les cases de cet état
+     * @return le nombre de déblocages de cet état
+     */
+    int redo(byte[] exponents) {
+        return read(++current, exponents);
+    }
+
+    private void write(long index, byte[] exponents, int unlock) {
+        int offset = (int) (index % capacity) * stateBytes;
+        if (offset + stateBytes > states.length) {
+            // l'historique n'a pas encore fait le tour : on agrandit le tableau jusqu'au budget
+            byte[] bigger = new byte[(int) Math.min((long) capacity * stateBytes, 2L * states.length)];
+            System.arraycopy(states, 0, bigger, 0, states.length);
+            states = bigger;
+        }
+        System.arraycopy(exponents, 0, states, offset, stateBytes - 1);
+        states[offset + stateBytes - 1] = (byte) Math.min(unlock, Byte.MAX_VALUE);
+    }
+
+    private int read(long index, byte[] exponents) {
+        int offset = (int) (index % capacity) * stateBytes;
+        System.arraycopy(states, offset, exponents, 0, stateBytes - 1);
+        return states[offset + stateBytes - 1];
+    }
+}
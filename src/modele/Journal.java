@@ -0,0 +1,265 @@
+package modele;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Journal binaire d'une partie, écrit au fil du jeu dans un fichier projeté en mémoire, sans jamais revenir sur ce qui a été écrit
+ * (seul le nombre de coups du bloc en cours et la longueur dans l'en-tête sont mis à jour).
+ *
+ * En-tête (HEADER_BYTES octets) : "2048JRNL", version, taille de la grille, graine du générateur, intervalle entre deux images clés,
+ * longueur utile du fichier. Suivent les enregistrements, chacun commençant par son type sur un octet :
+ * MOVES : nombre de coups (1 à 255) sur un octet, puis les directions, 2 bits par coup (ordinal de Direction, 4 coups par octet)
+ * SWAP : les deux cases échangées, 4 shorts (x1, y1, x2, y2)
+ * RESTART : redémarrage de la partie (les nouvelles cases sont tirées par le générateur, elles ne sont pas écrites)
+ * UNLOCK : nouveau nombre de déblocages (int), suivi d'un RESTART
+ * STATE : grille remise dans un état de l'historique par undo ou redo : nombre de déblocages (int) et exposants (un octet par case)
+ * KEYFRAME : image clé, écrite au début puis tous les keyframeInterval coups : numéro du coup (long), état du générateur (long),
+ * nombre de déblocages (int) et exposants
+ * Seuls les coups qui ont fait bouger la grille sont écrits. Le reste (nouvelles cases, fin de partie) se déduit en rejouant la partie
+ * avec le même générateur, voir JournalReplay.
+ */
+public class Journal implements Closeable {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+    static final long MAGIC = 0x323034384A524E4CL;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 40;
+    static final int SIZE_OFFSET = 12;
+    static final int SEED_OFFSET = 16;
+    static final int INTERVAL_OFFSET = 24;
+    static final int LENGTH_OFFSET = 32;
+
+    static final byte MOVES = 1;
+    static final byte SWAP = 2;
+    static final byte RESTART = 3;
+    static final byte UNLOCK = 4;
+    static final byte STATE = 5;
+    static final byte KEYFRAME = 6;
+    static final int MAX_MOVES_PER_BLOCK = 255;
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private final Game game;
+    private final SeededRandom random;
+    private final int keyframeInterval;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int length;
+    // position du bloc MOVES en cours, -1 si le dernier enregistrement n'est pas un bloc de coups
+    private int block = -1;
+    private int blockMoves;
+    private long moves;
+
+    private Journal(Path file, boolean replace, Game game, SeededRandom random, int keyframeInterval) throws IOException {
+        this.game = game;
+        this.random = random;
+        this.keyframeInterval = keyframeInterval;
+        this.channel = replace
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(SIZE_OFFSET, game.getSize());
+        buffer.putLong(SEED_OFFSET, random.getSeed());
+        buffer.putInt(INTERVAL_OFFSET, keyframeInterval);
+        length = HEADER_BYTES;
+        keyframe();
+    }
+
+    /**
+     * Commence le journal d'une partie, à partir de son état actuel (la première image clé)
+     * @param file le fichier du journal, écrasé s'il existe
+     * @param game la partie, dont le générateur doit être un SeededRandom
+     * @param keyframeInterval le nombre de coups entre deux images clés
+     * @return le journal, qui reçoit désormais chaque action de la partie
+     */
+    public static Journal create(Path file, Game game, int keyframeInterval) throws IOException {
+        return create(file, true, game, keyframeInterval);
+    }
+
+    public static Journal create(Path file, Game game) throws IOException {
+        return create(file, game, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * @param replace true pour écraser le fichier s'il existe, false pour échouer (FileAlreadyExistsException)
+     */
+    private static Journal create(Path file, boolean replace, Game game, int keyframeInterval) throws IOException {
+        SeededRandom random = game.seededRandom();
+        if (random == null) {
+            throw new IllegalArgumentException("Game must use a SeededRandom to be journaled");
+        }
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframeInterval must be positive");
+        }
+        Journal journal = new Journal(file, replace, game, random, keyframeInterval);
+        game.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Journal d'une partie jouée à l'écran, dans le dossier journals
+     * @return le journal, ou null s'il n'a pas pu être créé (la partie se joue alors sans journal)
+     */
+    public static Journal record(Game game) {
+        return record(game, Paths.get("journals"));
+    }
+
+    /**
+     * Journal d'une session de jeu, nommé d'après la graine de la partie et l'heure de son début (graine-millisecondes.journal,
+     * suivi d'un numéro si ce nom est déjà pris). Une partie reprise d'une sauvegarde garde sa graine : chaque session a son propre
+     * fichier, et le journal de la session qui a produit la sauvegarde n'est jamais écrasé.
+     * @param directory le dossier des journaux, créé s'il n'existe pas
+     * @return le journal, ou null s'il n'a pas pu être créé (la partie se joue alors sans journal)
+     */
+    public static Journal record(Game game, Path directory) {
+        String name = game.getSeed() + "-" + System.currentTimeMillis();
+        Path file = directory.resolve(name + ".journal");
+        try {
+            Files.createDirectories(directory);
+            for (int n = 1; ; n++) {
+                try {
+                    return create(file, false, game, DEFAULT_KEYFRAME_INTERVAL);
+                } catch (FileAlreadyExistsException e) {
+                    file = directory.resolve(name + "-" + n + ".journal");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Création du journal " + file + " impossible : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return le nombre de coups écrits
+     */
+    public long getMoveCount() {
+        return moves;
+    }
+
+    void moved(Direction direction) {
+        if (block < 0 || blockMoves == MAX_MOVES_PER_BLOCK) {
+            ensure(2 + (MAX_MOVES_PER_BLOCK + 3) / 4);
+            block = length;
+            blockMoves = 0;
+            buffer.put(length++, MOVES);
+            buffer.put(length++, (byte) 0);
+        }
+        if (blockMoves % 4 == 0) {
+            buffer.put(length++, (byte) 0);
+        }
+        int last = length - 1;
+        buffer.put(last, (byte) (buffer.get(last) | direction.ordinal() << (2 * (blockMoves % 4))));
+        buffer.put(block + 1, (byte) ++blockMoves);
+        moves++;
+        if (moves % keyframeInterval == 0) {
+            keyframe();
+        } else {
+            commit();
+        }
+    }
+
+    void swapped(int x1, int y1, int x2, int y2) {
+        start(SWAP, 8);
+        buffer.putShort(length, (short) x1);
+        buffer.putShort(length + 2, (short) y1);
+        buffer.putShort(length + 4, (short) x2);
+        buffer.putShort(length + 6, (short) y2);
+        length += 8;
+        commit();
+    }
+
+    void restarted() {
+        start(RESTART, 0);
+        commit();
+    }
+
+    void unlockChanged(int unlock) {
+        start(UNLOCK, 4);
+        buffer.putInt(length, unlock);
+        length += 4;
+        commit();
+    }
+
+    void state() {
+        start(STATE, 4 + game.getSize() * game.getSize());
+        buffer.putInt(length, game.getUnlock());
+        length += 4;
+        putBoard();
+        commit();
+    }
+
+    /**
+     * Écrit une image clé. L'index des cases vides de la partie est d'abord trié (Game.reindex) : après l'image clé, les nouvelles
+     * cases ne dépendent plus que de la grille et du générateur, et une relecture qui repart de cette image clé tire les mêmes.
+     */
+    private void keyframe() {
+        game.reindex();
+        start(KEYFRAME, 20 + game.getSize() * game.getSize());
+        buffer.putLong(length, moves);
+        buffer.putLong(length + 8, random.getState());
+        buffer.putInt(length + 16, game.getUnlock());
+        length += 20;
+        putBoard();
+        commit();
+    }
+
+    private void putBoard() {
+        byte[] exponents = game.exponents();
+        buffer.put(length, exponents, 0, exponents.length);
+        length += exponents.length;
+    }
+
+    /**
+     * Ferme le bloc de coups en cours et écrit le type d'un nouvel enregistrement
+     * @param payload la taille de l'enregistrement après son type
+     */
+    private void start(byte type, int payload) {
+        block = -1;
+        ensure(1 + payload);
+        buffer.put(length++, type);
+    }
+
+    private void commit() {
+        buffer.putLong(LENGTH_OFFSET, length);
+    }
+
+    /**
+     * Agrandit le fichier (et sa projection) s'il reste moins de bytes octets après la longueur utile
+     */
+    private void ensure(int bytes) {
+        if ((long) length + bytes <= buffer.capacity()) {
+            return;
+        }
+        long capacity = Math.max(2L * buffer.capacity(), (long) length + bytes);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Journal is full");
+        }
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Journal cannot grow", e);
+        }
+    }
+
+    /**
+     * Détache le journal de la partie, puis réduit le fichier à sa longueur utile
+     */
+    @Override
+    public void close() throws IOException {
+        game.setJournal(null);
+        buffer.force();
+        channel.truncate(length);
+        channel.close();
+    }
+}
@@ -0,0 +1,213 @@
+package modele;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Relecture d'un journal écrit par Journal.
+ * À l'ouverture, les enregistrements sont parcourus une fois (sans rejouer la partie) pour repérer les images clés. On peut ensuite :
+ * vérifier le journal, en rejouant toute la partie depuis la première image clé et en comparant chaque image clé à la partie rejouée ;
+ * retrouver l'état de la partie à n'importe quel coup, en repartant de l'image clé qui précède et en ne rejouant que les coups
+ * suivants (au plus keyframeInterval coups).
+ */
+public class JournalReplay {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ByteBuffer data;
+    private final int size;
+    private final long seed;
+    private final int length;
+    // position et numéro de coup de chaque image clé, dans l'ordre du fichier
+    private int[] keyframeOffsets = new int[16];
+    private long[] keyframeMoves = new long[16];
+    private int keyframes;
+    private long moveCount;
+
+    private JournalReplay(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.capacity() < Journal.HEADER_BYTES || data.getLong(0) != Journal.MAGIC) {
+            throw new IOException("Not a 2048 journal");
+        }
+        if (data.getInt(8) != Journal.VERSION) {
+            throw new IOException("Unsupported journal version " + data.getInt(8));
+        }
+        this.size = data.getInt(Journal.SIZE_OFFSET);
+        this.seed = data.getLong(Journal.SEED_OFFSET);
+        long length = data.getLong(Journal.LENGTH_OFFSET);
+        if (length < Journal.HEADER_BYTES || length > data.capacity()) {
+            throw new IOException("Corrupted journal length " + length);
+        }
+        this.length = (int) length;
+        index();
+    }
+
+    /**
+     * @param file un fichier écrit par Journal (éventuellement encore en cours d'écriture)
+     * @return la relecture du journal
+     */
+    public static JournalReplay open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new JournalReplay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Repère les images clés et compte les coups
+     */
+    private void index() throws IOException {
+        int offset = Journal.HEADER_BYTES;
+        while (offset < length) {
+            byte type = data.get(offset);
+            if (type == Journal.KEYFRAME) {
+                if (keyframes == keyframeOffsets.length) {
+                    keyframeOffsets = Arrays.copyOf(keyframeOffsets, 2 * keyframes);
+                    keyframeMoves = Arrays.copyOf(keyframeMoves, 2 * keyframes);
+                }
+                keyframeOffsets[keyframes] = offset;
+                keyframeMoves[keyframes++] = data.getLong(offset + 1);
+            } else if (type == Journal.MOVES) {
+                moveCount += data.get(offset + 1) & 0xFF;
+            }
+            offset += recordLength(offset);
+        }
+        if (offset != length || keyframes == 0 || keyframeMoves[0] != 0) {
+            throw new IOException("Corrupted journal");
+        }
+    }
+
+    /**
+     * @return la taille de l'enregistrement qui commence à offset, type compris
+     */
+    private int recordLength(int offset) throws IOException {
+        int board = size * size;
+        switch (data.get(offset)) {
+            case Journal.MOVES: return 2 + ((data.get(offset + 1) & 0xFF) + 3) / 4;
+            case Journal.SWAP: return 1 + 8;
+            case Journal.RESTART: return 1;
+            case Journal.UNLOCK: return 1 + 4;
+            case Journal.STATE: return 1 + 4 + board;
+            case Journal.KEYFRAME: return 1 + 20 + board;
+            default: throw new IOException("Unknown journal record " + data.get(offset) + " at " + offset);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return le nombre de coups du journal
+     */
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Rejoue toute la partie depuis la première image clé (la grille de départ, qui n'est pas forcément celle tirée par la graine
+     * si la partie a été reprise d'une sauvegarde), et vérifie que chaque coup fait bien bouger la grille et que chaque image clé
+     * (grille, nombre de déblocages, état du générateur) correspond à la partie rejouée
+     * @return -1 si le journal est cohérent, sinon le numéro du coup où la partie rejouée diverge
+     */
+    public long verify() throws IOException {
+        SeededRandom random = new SeededRandom(seed);
+        Game game = new Game(size, random);
+        load(game, random, keyframeOffsets[0]);
+        return play(game, random, Journal.HEADER_BYTES, 0, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * @param move un numéro de coup, entre 0 et getMoveCount()
+     * @return une partie sans interface dans l'état qui suit le coup demandé (et les actions qui l'ont suivi avant le coup d'après)
+     */
+    public Game seek(long move) throws IOException {
+        if (move < 0 || move > moveCount) {
+            throw new IllegalArgumentException("move must be between 0 and " + moveCount);
+        }
+        int k = Arrays.binarySearch(keyframeMoves, 0, keyframes, move);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        // plusieurs images clés peuvent avoir le même numéro de coup, on part de la dernière
+        while (k + 1 < keyframes && keyframeMoves[k + 1] == keyframeMoves[k]) {
+            k++;
+        }
+        int offset = keyframeOffsets[k];
+        SeededRandom random = new SeededRandom(seed);
+        Game game = new Game(size, random);
+        load(game, random, offset);
+        play(game, random, offset + recordLength(offset), keyframeMoves[k], move, false);
+        return game;
+    }
+
+    /**
+     * Met la partie dans l'état de l'image clé qui commence à offset
+     */
+    private void load(Game game, SeededRandom random, int offset) {
+        byte[] board = new byte[size * size];
+        data.get(offset + 21, board);
+        game.load(board, data.getInt(offset + 17));
+        random.setState(data.getLong(offset + 9));
+    }
+
+    /**
+     * Rejoue les enregistrements à partir de offset, jusqu'à la fin du journal ou jusqu'à arriver au coup target
+     * @param move le numéro du coup déjà joué au début de offset
+     * @param verify true pour comparer les images clés à la partie, false pour les ignorer
+     * @return -1, ou le numéro du coup où la partie diverge du journal (avec verify)
+     */
+    private long play(Game game, SeededRandom random, int offset, long move, long target, boolean verify) throws IOException {
+        byte[] board = new byte[size * size];
+        while (offset < length) {
+            switch (data.get(offset)) {
+                case Journal.MOVES:
+                    int count = data.get(offset + 1) & 0xFF;
+                    for (int i = 0; i < count; i++) {
+                        if (move == target) {
+                            return -1;
+                        }
+                        int bits = data.get(offset + 2 + i / 4) >> (2 * (i % 4));
+                        if (!game.move(DIRECTIONS[bits & 3]) && verify) {
+                            return move;
+                        }
+                        move++;
+                    }
+                    break;
+                case Journal.SWAP:
+                    game.setUnlockedCell(data.getShort(offset + 1), data.getShort(offset + 3));
+                    game.switchCell(data.getShort(offset + 5), data.getShort(offset + 7));
+                    break;
+                case Journal.RESTART:
+                    game.restart();
+                    break;
+                case Journal.UNLOCK:
+                    game.setUnlockCount(data.getInt(offset + 1));
+                    break;
+                case Journal.STATE:
+                    data.get(offset + 5, board);
+                    game.load(board, data.getInt(offset + 1));
+                    break;
+                case Journal.KEYFRAME:
+                    if (verify) {
+                        data.get(offset + 21, board);
+                        if (data.getLong(offset + 1) != move || data.getLong(offset + 9) != random.getState()
+                                || data.getInt(offset + 17) != game.getUnlock() || !Arrays.equals(board, game.exponents())) {
+                            return move;
+                        }
+                    }
+                    // comme la partie journalisée à cet endroit
+                    game.reindex();
+                    break;
+            }
+            offset += recordLength(offset);
+        }
+        return -1;
+    }
+}
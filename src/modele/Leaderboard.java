@@ -0,0 +1,435 @@
+package modele;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Tableau des meilleurs résultats, gardé dans un fichier binaire de taille fixe que plusieurs JVM peuvent lire et écrire en même temps.
+ * Les résultats sont rangés par tableau : un tableau par taille de grille et nombre de déblocages, qui garde les RANKS meilleures
+ * parties (plus grosse case, puis temps pour atteindre 2048, puis date), ainsi que la plus grosse case et le meilleur temps jamais atteints.
+ *
+ * Le fichier est une table de hachage à adressage ouvert de BOARDS tableaux de taille fixe, précédée d'un en-tête (HEADER_BYTES octets :
+ * "2048LDBL", version, RANKS, BOARDS, génération). Chaque tableau est gardé en deux copies (COPY_BYTES octets chacune). Une copie commence par
+ * son numéro de séquence, la somme de contrôle (CRC32) du reste de la copie, la clé du tableau (taille, déblocages), le nombre de
+ * résultats, la plus grosse case (exposant) et le meilleur temps (millisecondes), suivis des résultats : identifiant de la partie,
+ * date, temps pour atteindre 2048 (0 si jamais atteint), exposant de la plus grosse case et nom du joueur (PLAYER_BYTES octets en UTF-8).
+ * La place d'un tableau ne change jamais : elle est gardée en mémoire après la première recherche.
+ *
+ * Une écriture remplace la copie la plus ancienne, avec le numéro de séquence suivant, et est forcée sur le disque avant que le verrou
+ * soit relâché. La lecture garde la copie valide (somme de contrôle juste) de plus grand numéro : un arrêt brutal pendant une écriture
+ * ne laisse jamais un tableau à moitié écrit, il perd au plus ce dernier résultat. Une place sans copie valide est libre.
+ *
+ * Chaque accès verrouille le fichier (verrou partagé pour lire, exclusif pour écrire), et chaque écriture relit le tableau sous le
+ * verrou avant de le modifier : deux JVM qui enregistrent un résultat en même temps ne perdent aucune mise à jour.
+ * La génération de l'en-tête augmente à chaque écriture : elle se lit sans verrou (getGeneration), et dit aux lecteurs qui gardent
+ * des records en mémoire (voir ScoreStore) quand les relire.
+ * Il n'existe qu'un Leaderboard par fichier dans une JVM (forFile), ses méthodes sont synchronisées.
+ */
+public class Leaderboard {
+    public static final int RANKS = 10;
+    static final int BOARDS = 256;
+    static final int PLAYER_BYTES = 20;
+
+    private static final long MAGIC = 0x323034384C44424CL;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    // position de la génération dans l'en-tête
+    private static final int GENERATION = 24;
+    // séquence, somme de contrôle, taille, déblocages, nombre de résultats, plus grosse case, meilleur temps
+    static final int COPY_HEADER_BYTES = 8 + 4 + 4 + 4 + 4 + 4 + 8;
+    private static final int ENTRY_BYTES = 8 + 8 + 8 + 4 + PLAYER_BYTES;
+    static final int COPY_BYTES = COPY_HEADER_BYTES + RANKS * ENTRY_BYTES;
+    private static final int BOARD_BYTES = 2 * COPY_BYTES;
+    // positions dans une copie
+    private static final int CHECKSUM = 8;
+    private static final int SIZE = 12;
+    private static final int UNLOCK = 16;
+    private static final int COUNT = 20;
+    private static final int BEST_EXPONENT = 24;
+    private static final int BEST_TIME = 28;
+    private static final Map<Path, Leaderboard> LEADERBOARDS = new HashMap<>();
+
+    /**
+     * Un résultat du tableau
+     */
+    public static final class Entry {
+        private final long gameId;
+        private final String player;
+        private final int exponent;
+        private final long timeMillis;
+        private final long date;
+
+        /**
+         * @param gameId l'identifiant de la partie : une partie n'a qu'un résultat, mis à jour au fil de la partie
+         * @param player le nom du joueur (tronqué à PLAYER_BYTES octets)
+         * @param exponent l'exposant de la plus grosse case
+         * @param timeMillis le temps pour atteindre 2048 en millisecondes, 0 si la partie ne l'a pas atteint
+         * @param date la date du résultat (System.currentTimeMillis)
+         */
+        public Entry(long gameId, String player, int exponent, long timeMillis, long date) {
+            this.gameId = gameId;
+            this.player = player;
+            this.exponent = exponent;
+            this.timeMillis = timeMillis;
+            this.date = date;
+        }
+
+        public long getGameId() {
+            return gameId;
+        }
+
+        public String getPlayer() {
+            return player;
+        }
+
+        public int getMaxTile() {
+            return exponent == 0 ? 0 : 1 << exponent;
+        }
+
+        int getExponent() {
+            return exponent;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public long getDate() {
+            return date;
+        }
+
+        /**
+         * @return true si ce résultat est meilleur que other : plus grosse case, puis 2048 plus vite, puis plus ancien
+         */
+        boolean beats(Entry other) {
+            if (exponent != other.exponent) {
+                return exponent > other.exponent;
+            }
+            if (timeMillis != other.timeMillis) {
+                return other.timeMillis == 0 || (timeMillis != 0 && timeMillis < other.timeMillis);
+            }
+            return date < other.date;
+        }
+
+        @Override
+        public String toString() {
+            return player + " " + getMaxTile() + (timeMillis == 0 ? "" : " " + timeMillis / 1000.0 + "s");
+        }
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    // la génération de l'en-tête, projetée en mémoire : la lire ne coûte ni appel système ni allocation
+    private final MappedByteBuffer generation;
+    // place de chaque tableau déjà trouvé, clé : taille * 256 + déblocages
+    private final Map<Integer, Integer> slots = new HashMap<>();
+    // les deux copies du dernier tableau lu (voir readCopies)
+    private final ByteBuffer[] copies = {ByteBuffer.allocate(COPY_BYTES), ByteBuffer.allocate(COPY_BYTES)};
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Un accès au fichier, fait sous verrou (voir locked)
+     */
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private Leaderboard(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean valid = locked(false, () -> {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.size() == 0) {
+                header.putLong(MAGIC).putInt(VERSION).putInt(RANKS).putInt(BOARDS).flip();
+                channel.write(header, 0);
+                // le fichier a sa taille définitive dès sa création
+                channel.write(ByteBuffer.allocate(1), HEADER_BYTES + (long) BOARDS * BOARD_BYTES - 1);
+                channel.force(true);
+                return true;
+            }
+            channel.read(header, 0);
+            return header.getLong(0) == MAGIC && header.getInt(8) == VERSION && header.getInt(12) == RANKS && header.getInt(16) == BOARDS;
+        });
+        if (!valid) {
+            channel.close();
+            throw new IOException(file.getFileName() + " is not a leaderboard");
+        }
+        this.generation = channel.map(FileChannel.MapMode.READ_ONLY, GENERATION, 8);
+    }
+
+    /**
+     * Exécute un accès au fichier sous verrou
+     * @param shared true pour un verrou partagé (lecture), false pour un verrou exclusif (écriture)
+     */
+    private <T> T locked(boolean shared, LockedAction<T> action) throws IOException {
+        FileLock lock = channel.lock(0, Long.MAX_VALUE, shared);
+        try {
+            return action.run();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * @param file le fichier du tableau, créé s'il n'existe pas
+     * @return le tableau associé à ce fichier, ouvert au premier appel
+     */
+    public static synchronized Leaderboard forFile(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Leaderboard leaderboard = LEADERBOARDS.get(key);
+        if (leaderboard == null) {
+            leaderboard = new Leaderboard(key);
+            LEADERBOARDS.put(key, leaderboard);
+        }
+        return leaderboard;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Lit la génération du fichier en mémoire (projection de l'en-tête), sans verrou ni appel système : elle peut donc être lue
+     * depuis l'EDT à chaque rafraîchissement. Une lecture faite pendant une écriture peut donner une valeur incohérente, qui
+     * provoque au pire une relecture de trop.
+     * @return un nombre qui change à chaque écriture du fichier, par cette JVM ou une autre
+     */
+    public long getGeneration() {
+        return generation.getLong(0);
+    }
+
+    /**
+     * Lit le fichier sous verrou partagé, et attend donc une autre JVM qui écrit : à ne pas appeler depuis l'EDT (voir ScoreStore)
+     * @return la plus grosse case atteinte sur ce type de partie, 0 si aucune
+     */
+    public synchronized int getBestTile(int size, int unlock) throws IOException {
+        return locked(true, () -> {
+            int current = readCurrent(size, unlock);
+            int exponent = current < 0 ? 0 : copies[current].getInt(BEST_EXPONENT);
+            return exponent == 0 ? 0 : 1 << exponent;
+        });
+    }
+
+    /**
+     * Lit le fichier sous verrou partagé, comme getBestTile
+     * @return le meilleur temps pour atteindre 2048 sur ce type de partie, en millisecondes, 0 s'il n'a jamais été atteint
+     */
+    public synchronized long getBestTimeMillis(int size, int unlock) throws IOException {
+        return locked(true, () -> {
+            int current = readCurrent(size, unlock);
+            return current < 0 ? 0L : copies[current].getLong(BEST_TIME);
+        });
+    }
+
+    /**
+     * @return les meilleurs résultats de ce type de partie, du meilleur au moins bon
+     */
+    public synchronized List<Entry> top(int size, int unlock) throws IOException {
+        return locked(true, () -> {
+            int offset = find(size, unlock, false);
+            return offset < 0 ? new ArrayList<>() : readBoard(offset);
+        });
+    }
+
+    /**
+     * Enregistre le résultat d'une partie. S'il y a déjà un résultat de la même partie, il est remplacé par le meilleur des deux
+     * (plus grosse case, premier temps pour atteindre 2048). Le résultat n'entre dans le tableau que s'il est parmi les RANKS meilleurs,
+     * mais les records (plus grosse case et meilleur temps) sont toujours mis à jour.
+     * @return false si le fichier n'a plus de place pour un nouveau type de partie
+     */
+    public synchronized boolean offer(int size, int unlock, Entry offered) throws IOException {
+        return locked(false, () -> {
+            int offset = find(size, unlock, true);
+            if (offset < 0) {
+                return false;
+            }
+            // les deux copies peuvent avoir été abîmées depuis que la place a été trouvée : le tableau repart alors de zéro
+            int current = readCopies(offset);
+            int bestExponent = current < 0 ? 0 : copies[current].getInt(BEST_EXPONENT);
+            long bestTime = current < 0 ? 0 : copies[current].getLong(BEST_TIME);
+            Entry entry = offered;
+            List<Entry> entries = readBoard(offset);
+            for (int i = 0; i < entries.size(); i++) {
+                Entry old = entries.get(i);
+                if (old.gameId == entry.gameId) {
+                    entries.remove(i);
+                    entry = new Entry(entry.gameId, entry.player, Math.max(old.exponent, entry.exponent),
+                            old.timeMillis != 0 ? old.timeMillis : entry.timeMillis, old.date);
+                    break;
+                }
+            }
+            int rank = 0;
+            while (rank < entries.size() && !entry.beats(entries.get(rank))) {
+                rank++;
+            }
+            entries.add(rank, entry);
+            if (entries.size() > RANKS) {
+                entries.remove(RANKS);
+            }
+            bestExponent = Math.max(bestExponent, entry.exponent);
+            if (entry.timeMillis != 0 && (bestTime == 0 || entry.timeMillis < bestTime)) {
+                bestTime = entry.timeMillis;
+            }
+            writeBoard(offset, size, unlock, entries, bestExponent, bestTime);
+            return true;
+        });
+    }
+
+    /**
+     * Vide le tableau de ce type de partie et remet ses records à 0
+     */
+    public synchronized void reset(int size, int unlock) throws IOException {
+        locked(false, () -> {
+            int offset = find(size, unlock, false);
+            if (offset >= 0) {
+                writeBoard(offset, size, unlock, new ArrayList<>(), 0, 0);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Cherche la place du tableau (taille, déblocages), par sondage linéaire à partir de son hash. Doit être appelée sous verrou.
+     * @param claim true pour prendre la première place libre si le tableau n'existe pas encore (verrou exclusif)
+     * @return la position du tableau dans le fichier, -1 s'il n'existe pas (ou s'il n'y a plus de place)
+     */
+    private int find(int size, int unlock, boolean claim) throws IOException {
+        int key = size * 256 + Math.min(unlock, 255);
+        Integer known = slots.get(key);
+        if (known != null) {
+            return offset(known);
+        }
+        int start = home(size, unlock);
+        for (int i = 0; i < BOARDS; i++) {
+            int slot = (start + i) % BOARDS;
+            int current = readCopies(offset(slot));
+            if (current < 0) {
+                if (!claim) {
+                    return -1;
+                }
+                writeBoard(offset(slot), size, unlock, new ArrayList<>(), 0, 0);
+            } else if (copies[current].getInt(SIZE) != size || copies[current].getInt(UNLOCK) != Math.min(unlock, 255)) {
+                continue;
+            }
+            slots.put(key, slot);
+            return offset(slot);
+        }
+        return -1;
+    }
+
+    /**
+     * @return la première place sondée pour le tableau (taille, déblocages)
+     */
+    static int home(int size, int unlock) {
+        return Math.floorMod((size * 256 + Math.min(unlock, 255)) * 0x9E3779B9, BOARDS);
+    }
+
+    /**
+     * @return la position dans le fichier du tableau à cette place (sa première copie, la seconde la suit)
+     */
+    static int offset(int slot) {
+        return HEADER_BYTES + slot * BOARD_BYTES;
+    }
+
+    /**
+     * Lit les deux copies du tableau (taille, déblocages) dans copies. Doit être appelée sous verrou.
+     * @return l'indice de la copie à jour, -1 si le tableau n'existe pas ou n'a plus de copie valide
+     */
+    private int readCurrent(int size, int unlock) throws IOException {
+        int offset = find(size, unlock, false);
+        return offset < 0 ? -1 : readCopies(offset);
+    }
+
+    /**
+     * Lit les deux copies du tableau à cette position dans copies
+     * @return l'indice de la copie à jour : la copie valide de plus grand numéro de séquence, -1 si aucune n'est valide (place libre)
+     */
+    private int readCopies(int offset) throws IOException {
+        int current = -1;
+        for (int c = 0; c < 2; c++) {
+            ByteBuffer copy = copies[c];
+            copy.clear();
+            channel.read(copy, offset + (long) c * COPY_BYTES);
+            if (copy.position() == COPY_BYTES && copy.getInt(CHECKSUM) == checksum(copy)
+                    && (current < 0 || copy.getLong(0) > copies[current].getLong(0))) {
+                current = c;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return la somme de contrôle d'une copie : CRC32 de toute la copie, sauf la somme elle-même
+     */
+    private int checksum(ByteBuffer copy) {
+        crc.reset();
+        crc.update(copy.array(), 0, CHECKSUM);
+        crc.update(copy.array(), CHECKSUM + 4, COPY_BYTES - CHECKSUM - 4);
+        return (int) crc.getValue();
+    }
+
+    private List<Entry> readBoard(int offset) throws IOException {
+        int current = readCopies(offset);
+        List<Entry> entries = new ArrayList<>(RANKS + 1);
+        if (current < 0) {
+            return entries;
+        }
+        ByteBuffer board = copies[current];
+        int count = Math.min(board.getInt(COUNT), RANKS);
+        byte[] player = new byte[PLAYER_BYTES];
+        for (int i = 0; i < count; i++) {
+            board.position(COPY_HEADER_BYTES + i * ENTRY_BYTES);
+            long gameId = board.getLong();
+            long date = board.getLong();
+            long time = board.getLong();
+            int exponent = board.getInt();
+            board.get(player);
+            int length = 0;
+            while (length < PLAYER_BYTES && player[length] != 0) {
+                length++;
+            }
+            entries.add(new Entry(gameId, new String(player, 0, length, StandardCharsets.UTF_8), exponent, time, date));
+        }
+        return entries;
+    }
+
+    /**
+     * Écrit le tableau à la place de sa copie la plus ancienne (ou invalide) et augmente la génération du fichier, puis force
+     * l'écriture sur le disque.
+     * Doit être appelée sous verrou exclusif.
+     */
+    private void writeBoard(int offset, int size, int unlock, List<Entry> entries, int bestExponent, long bestTime) throws IOException {
+        int current = readCopies(offset);
+        long sequence = current < 0 ? 1 : copies[current].getLong(0) + 1;
+        int target = current == 0 ? 1 : 0;
+        ByteBuffer board = copies[target];
+        board.clear();
+        board.putLong(sequence).putInt(0).putInt(size).putInt(Math.min(unlock, 255)).putInt(entries.size()).putInt(bestExponent).putLong(bestTime);
+        for (Entry entry : entries) {
+            byte[] player = new byte[PLAYER_BYTES];
+            byte[] name = entry.player.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(name, 0, player, 0, Math.min(name.length, PLAYER_BYTES));
+            board.putLong(entry.gameId).putLong(entry.date).putLong(entry.timeMillis).putInt(entry.exponent).put(player);
+        }
+        while (board.hasRemaining()) {
+            board.put((byte) 0);
+        }
+        board.putInt(CHECKSUM, checksum(board));
+        board.flip();
+        channel.write(board, offset + (long) target * COPY_BYTES);
+        ByteBuffer next = ByteBuffer.allocate(8).putLong(0, getGeneration() + 1);
+        channel.write(next, GENERATION);
+        channel.force(false);
+    }
+}
@@ -0,0 +1,151 @@
+package modele;
+
+/**
+ * Ensemble des changements produits par une action sur le jeu (un coup, un échange de deux cases, un redémarrage), transmis aux
+ * observers en argument de notifyObservers. Un observer peut ainsi ne mettre à jour que les cases concernées au lieu de relire
+ * toute la grille.
+ *
+ * Chaque changement est stocké sur quatre entiers : son type, la case de départ, la case d'arrivée (indice x*size+y) et une valeur :
+ * MOVED : une case de valeur value a glissé de from à to
+ * MERGED : une case a glissé de from à to et y a fusionné, la case to vaut maintenant value
+ * SPAWNED : une nouvelle case de valeur value est apparue en to (from = to)
+ * SWAPPED : les cases from et to ont été échangées (value = 0)
+ * Un ensemble complet (isFull) signifie que toute la grille a pu changer, par exemple après un redémarrage.
+ */
+public class MoveDiff {
+    public static final int MOVED = 0;
+    public static final int MERGED = 1;
+    public static final int SPAWNED = 2;
+    public static final int SWAPPED = 3;
+
+    private static final int STRIDE = 4;
+
+    private final int size;
+    private final boolean full;
+    private int[] data;
+    private int count;
+
+    /**
+     * @param size la taille de la grille du jeu
+     */
+    public MoveDiff(int size) {
+        this(size, false);
+    }
+
+    private MoveDiff(int size, boolean full) {
+        this.size = size;
+        this.full = full;
+        this.data = new int[STRIDE * Math.max(2, size)];
+    }
+
+    /**
+     * @param size la taille de la grille du jeu
+     * @return un ensemble qui indique que toute la grille a pu changer
+     */
+    public static MoveDiff full(int size) {
+        return new MoveDiff(size, true);
+    }
+
+    private void add(int type, int fromX, int fromY, int toX, int toY, int value) {
+        if (STRIDE * (count + 1) > data.length) {
+            int[] bigger = new int[data.length * 2];
+            System.arraycopy(data, 0, bigger, 0, data.length);
+            data = bigger;
+        }
+        int i = STRIDE * count++;
+        data[i] = type;
+        data[i + 1] = fromX * size + fromY;
+        data[i + 2] = toX * size + toY;
+        data[i + 3] = value;
+    }
+
+    void moved(int fromX, int fromY, int toX, int toY, int value) {
+        add(MOVED, fromX, fromY, toX, toY, value);
+    }
+
+    void merged(int fromX, int fromY, int toX, int toY, int value) {
+        add(MERGED, fromX, fromY, toX, toY, value);
+    }
+
+    void spawned(int x, int y, int value) {
+        add(SPAWNED, x, y, x, y, value);
+    }
+
+    void swapped(int x1, int y1, int x2, int y2) {
+        add(SWAPPED, x1, y1, x2, y2, 0);
+    }
+
+    /**
+     * @return la taille de la grille du jeu
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return true si toute la grille a pu changer, auquel cas la liste des changements est vide
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return le nombre de changements
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return true s'il n'y a aucun changement
+     */
+    public boolean isEmpty() {
+        return count == 0 && !full;
+    }
+
+    /**
+     * @param i l'indice du changement, entre 0 et count()-1
+     * @return son type : MOVED, MERGED, SPAWNED ou SWAPPED
+     */
+    public int getType(int i) {
+        return data[STRIDE * i];
+    }
+
+    public int getFromX(int i) {
+        return data[STRIDE * i + 1] / size;
+    }
+
+    public int getFromY(int i) {
+        return data[STRIDE * i + 1] % size;
+    }
+
+    public int getToX(int i) {
+        return data[STRIDE * i + 2] / size;
+    }
+
+    public int getToY(int i) {
+        return data[STRIDE * i + 2] % size;
+    }
+
+    /**
+     * @return la valeur associée au changement (voir la description de la classe)
+     */
+    public int getValue(int i) {
+        return data[STRIDE * i + 3];
+    }
+
+    @Override
+    public String toString() {
+        if (full) {
+            return "MoveDiff{full}";
+        }
+        StringBuilder stringBuilder = new StringBuilder("MoveDiff{");
+        String[] names = {"moved", "merged", "spawned", "swapped"};
+        for (int i = 0; i < count; i++) {
+            if (i > 0) stringBuilder.append(", ");
+            stringBuilder.append(names[getType(i)]).append(" (").append(getFromX(i)).append(",").append(getFromY(i)).append(")->(")
+                    .append(getToX(i)).append(",").append(getToY(i)).append(")=").append(getValue(i));
+        }
+        return stringBuilder.append("}").toString();
+    }
+}
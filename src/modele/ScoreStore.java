@@ -0,0 +1,295 @@
+package modele;
+
+import metriques.GameMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records des parties affichées, enregistrés dans un Leaderboard : un tableau des meilleurs résultats par taille de grille et nombre
+ * de déblocages, partagé par tous les jeux de la JVM et par les autres JVM qui utilisent le même fichier.
+ * Les records (pied de la fenêtre) sont lus en mémoire, sans verrou : le thread d'écriture les relit dans le tableau après chaque
+ * écriture, et quand la génération du fichier montre qu'une autre JVM l'a modifié. L'EDT ne touche donc jamais au verrou du
+ * fichier, même quand une autre JVM le garde. Les résultats proposés pendant une partie sont confiés au même thread :
+ * plusieurs résultats d'une même partie proposés avant l'écriture n'en donnent qu'une. Le tableau complet (top) est lu lui aussi
+ * par ce thread.
+ * Il n'existe qu'un store par fichier, partagé par tous les jeux qui l'utilisent.
+ */
+public class ScoreStore implements Scores {
+    private static final Map<Path, ScoreStore> STORES = new HashMap<>();
+    private static ExecutorService writer;
+
+    private final Path file;
+    // null si le fichier n'a pas pu être ouvert : les records ne sont alors pas gardés
+    private final Leaderboard leaderboard;
+    private final String player = System.getProperty("user.name", "");
+    // résultats pas encore écrits, par identifiant de partie
+    private final Map<Long, Pending> pending = new LinkedHashMap<>();
+    private boolean flushPending;
+    // records des types de partie déjà demandés (clé : taille * 256 + déblocages), relus par le thread d'écriture
+    private final Map<Integer, Records> records = new ConcurrentHashMap<>();
+    // génération du fichier lors de la dernière lecture des records, -1 avant la première
+    private volatile long generation = -1;
+    private boolean reloadPending;
+
+    /**
+     * Records d'un type de partie
+     */
+    private static final class Records {
+        static final Records NONE = new Records(0, 0);
+
+        final int tile;
+        final long timeMillis;
+
+        Records(int tile, long timeMillis) {
+            this.tile = tile;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    /**
+     * Résultat d'une partie en attente d'écriture
+     */
+    private static final class Pending {
+        final int size;
+        final int unlock;
+        final Leaderboard.Entry entry;
+
+        Pending(int size, int unlock, Leaderboard.Entry entry) {
+            this.size = size;
+            this.unlock = unlock;
+            this.entry = entry;
+        }
+    }
+
+    private ScoreStore(Path file) {
+        this.file = file;
+        Leaderboard leaderboard = null;
+        try {
+            leaderboard = Leaderboard.forFile(file);
+        } catch (IOException e) {
+            System.err.println("Lecture de " + file.getFileName() + " impossible : " + e.getMessage());
+        }
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * @param file le fichier du tableau des scores
+     * @return le store associé à ce fichier, créé (et le fichier ouvert) au premier appel
+     */
+    public static synchronized ScoreStore forFile(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        ScoreStore store = STORES.get(key);
+        if (store == null) {
+            store = new ScoreStore(key);
+            STORES.put(key, store);
+        }
+        return store;
+    }
+
+    /**
+     * Thread d'écriture commun à tous les stores, créé à la première écriture. Les écritures encore en attente à l'arrêt
+     * de la JVM sont faites par un hook d'arrêt.
+     */
+    private static synchronized ExecutorService writer() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "score-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(ScoreStore::flushAll, "score-flush"));
+        }
+        return writer;
+    }
+
+    private static void flushAll() {
+        List<ScoreStore> stores;
+        synchronized (ScoreStore.class) {
+            stores = List.copyOf(STORES.values());
+        }
+        for (ScoreStore store : stores) {
+            store.flush();
+        }
+    }
+
+    /**
+     * @return le fichier des scores
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return le tableau des scores, null si le fichier n'a pas pu être ouvert
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * Lu en mémoire : 0 tant que les records de ce type de partie n'ont pas encore été lus par le thread d'écriture
+     */
+    @Override
+    public int getBestScore(int size, int unlock) {
+        return records(size, unlock).tile;
+    }
+
+    @Override
+    public double getBestTime(int size, int unlock) {
+        return records(size, unlock).timeMillis / 1000.0;
+    }
+
+    /**
+     * @return les records en mémoire de ce type de partie, relus en arrière-plan s'ils n'y sont pas encore ou si le fichier a changé
+     */
+    private Records records(int size, int unlock) {
+        if (leaderboard == null) {
+            return Records.NONE;
+        }
+        int key = size * 256 + Math.min(unlock, 255);
+        Records known = records.putIfAbsent(key, Records.NONE);
+        if (known == null || leaderboard.getGeneration() != generation) {
+            reload();
+        }
+        return known == null ? Records.NONE : known;
+    }
+
+    /**
+     * Programme la relecture des records sur le thread d'écriture, si elle n'est pas déjà programmée
+     */
+    private void reload() {
+        synchronized (this) {
+            if (reloadPending) {
+                return;
+            }
+            reloadPending = true;
+        }
+        writer().execute(this::readRecords);
+    }
+
+    /**
+     * Relit dans le tableau les records de tous les types de partie déjà demandés (sur le thread d'écriture)
+     */
+    private void readRecords() {
+        synchronized (this) {
+            reloadPending = false;
+        }
+        try {
+            // lue avant les records : une écriture faite pendant la lecture sera vue par la prochaine vérification
+            long current = leaderboard.getGeneration();
+            for (int key : records.keySet()) {
+                int size = key / 256;
+                int unlock = key % 256;
+                records.put(key, new Records(leaderboard.getBestTile(size, unlock), leaderboard.getBestTimeMillis(size, unlock)));
+            }
+            generation = current;
+        } catch (IOException e) {
+            System.err.println("Lecture de " + file.getFileName() + " impossible : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lit le tableau sur le thread d'écriture (après les écritures déjà demandées), qui seul attend le verrou du fichier
+     */
+    @Override
+    public CompletableFuture<List<Leaderboard.Entry>> top(int size, int unlock) {
+        if (leaderboard == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            flush();
+            try {
+                return leaderboard.top(size, unlock);
+            } catch (IOException e) {
+                System.err.println("Lecture de " + file.getFileName() + " impossible : " + e.getMessage());
+                return new ArrayList<>();
+            }
+        }, writer());
+    }
+
+    /**
+     * Propose une nouvelle case formée par une partie : son résultat dans le tableau prend la plus grosse case, et le temps
+     * si c'est la première case 2048 de la partie.
+     * @param size la taille de la grille
+     * @param unlock le nombre de déblocages de la partie
+     * @param gameId l'identifiant de la partie
+     * @param value la valeur de la case
+     * @param time le temps de jeu écoulé, en secondes
+     */
+    @Override
+    public void offer(int size, int unlock, long gameId, int value, double time) {
+        if (leaderboard == null) {
+            return;
+        }
+        synchronized (this) {
+            int exponent = Integer.numberOfTrailingZeros(value);
+            long millis = value == 2048 ? Math.max(1, Math.round(time * 1000)) : 0;
+            Pending old = pending.get(gameId);
+            if (old != null) {
+                exponent = Math.max(exponent, old.entry.getExponent());
+                millis = old.entry.getTimeMillis() != 0 ? old.entry.getTimeMillis() : millis;
+            }
+            pending.put(gameId, new Pending(size, unlock, new Leaderboard.Entry(gameId, player, exponent, millis, System.currentTimeMillis())));
+            if (flushPending) {
+                return;
+            }
+            flushPending = true;
+        }
+        writer().execute(this::flush);
+    }
+
+    /**
+     * Vide le tableau de ce type de partie (sur le thread d'écriture, après les écritures déjà demandées)
+     */
+    @Override
+    public void reset(int size, int unlock) {
+        if (leaderboard == null) {
+            return;
+        }
+        writer().execute(() -> {
+            flush();
+            try {
+                leaderboard.reset(size, unlock);
+                System.out.println("Scores " + size + "x" + size + " remis à 0.");
+            } catch (IOException e) {
+                System.err.println("Écriture de " + file.getFileName() + " impossible : " + e.getMessage());
+            }
+            readRecords();
+        });
+    }
+
+    /**
+     * Écrit les résultats en attente dans le tableau, puis relit les records
+     */
+    private void flush() {
+        List<Pending> offers;
+        synchronized (this) {
+            if (!flushPending) {
+                return;
+            }
+            flushPending = false;
+            offers = List.copyOf(pending.values());
+            pending.clear();
+        }
+        try {
+            for (Pending offer : offers) {
+                long start = System.nanoTime();
+                leaderboard.offer(offer.size, offer.unlock, offer.entry);
+                GameMetrics.get().scoreWritten(System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            System.err.println("Écriture de " + file.getFileName() + " impossible : " + e.getMessage());
+        }
+        readRecords();
+    }
+}
@@ -0,0 +1,71 @@
+package modele;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Enregistrement des résultats des parties, donné au jeu à sa construction (voir Game.Builder.scores).
+ * Les jeux affichés utilisent un ScoreStore ; les jeux sans interface utilisent NONE, qui n'ouvre aucun fichier et ne garde rien.
+ * Les résultats sont rangés par type de partie : taille de la grille et nombre de déblocages.
+ */
+public interface Scores {
+    /**
+     * Aucun enregistrement : les résultats proposés sont ignorés, et il n'y a ni record ni tableau des scores
+     */
+    Scores NONE = new Scores() {
+        @Override
+        public void offer(int size, int unlock, long gameId, int value, double time) {
+        }
+
+        @Override
+        public int getBestScore(int size, int unlock) {
+            return 0;
+        }
+
+        @Override
+        public double getBestTime(int size, int unlock) {
+            return 0;
+        }
+
+        @Override
+        public CompletableFuture<List<Leaderboard.Entry>> top(int size, int unlock) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        @Override
+        public void reset(int size, int unlock) {
+        }
+    };
+
+    /**
+     * Propose une nouvelle case formée par une partie
+     * @param size la taille de la grille
+     * @param unlock le nombre de déblocages de la partie
+     * @param gameId l'identifiant de la partie
+     * @param value la valeur de la case
+     * @param time le temps de jeu écoulé, en secondes
+     */
+    void offer(int size, int unlock, long gameId, int value, double time);
+
+    /**
+     * @return la plus grosse case atteinte sur ce type de partie, 0 si aucune
+     */
+    int getBestScore(int size, int unlock);
+
+    /**
+     * @return le meilleur temps pour atteindre 2048 sur ce type de partie (en secondes), 0 si ce score n'a jamais été atteint
+     */
+    double getBestTime(int size, int unlock);
+
+    /**
+     * Demande les meilleurs résultats de ce type de partie, sans attendre leur lecture
+     * @return les résultats, du meilleur au moins bon, disponibles quand ils ont été lus
+     */
+    CompletableFuture<List<Leaderboard.Entry>> top(int size, int unlock);
+
+    /**
+     * Oublie les résultats de ce type de partie
+     */
+    void reset(int size, int unlock);
+}
@@ -0,0 +1,64 @@
+package modele;
+
+import java.util.Random;
+
+/**
+ * Générateur aléatoire dont l'état tient dans un long que l'on peut lire et remettre (algorithme SplitMix64).
+ * Une partie jouée avec ce générateur peut donc être rejouée à l'identique à partir de sa graine, ou reprise au milieu
+ * à partir d'un état sauvegardé (voir Journal et JournalReplay).
+ * Contrairement à java.util.Random, il n'est pas prévu pour être partagé entre plusieurs threads : chaque jeu a le sien.
+ */
+public class SeededRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private final long seed;
+    private long state;
+
+    /**
+     * @param seed la graine, qui est aussi l'état initial
+     */
+    public SeededRandom(long seed) {
+        super(seed);
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    /**
+     * @return la graine passée au constructeur
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return l'état courant : un générateur remis dans cet état produit ensuite les mêmes nombres
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * @param state un état lu par getState
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Appelée par le constructeur de Random, puis éventuellement par l'utilisateur : remet l'état à la graine donnée
+     */
+    @Override
+    public void setSeed(long seed) {
+        this.state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state += 0x9E3779B97F4A7C15L;
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (int) (z >>> (64 - bits));
+    }
+}
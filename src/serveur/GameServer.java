@@ -0,0 +1,149 @@
+package serveur;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serveur local de parties : chaque connexion (TCP sur l'interface loopback, ou socket Unix) a sa propre partie sans interface,
+ * pilotée par le protocole texte décrit dans Session.
+ * Chaque connexion est servie par un thread virtuel (Java 21 et plus), qui bloque sur la lecture du socket sans occuper de thread
+ * système : des dizaines de milliers de sessions tiennent dans une JVM. Les parties n'ont pas de timer (le temps est calculé à la
+ * lecture, voir GameClock) et ne lancent donc aucun thread.
+ * Avant Java 21, les connexions sont servies par un pool de threads classiques, un par connexion ouverte.
+ */
+public class GameServer implements Closeable {
+    public static final int DEFAULT_PORT = 2048;
+    private static final int BACKLOG = 4096;
+
+    private final ServerSocketChannel server;
+    private final ExecutorService executor;
+    // connexions ouvertes, fermées avec le serveur
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    private GameServer(ServerSocketChannel server) {
+        this.server = server;
+        this.executor = newSessionExecutor();
+    }
+
+    /**
+     * @param port le port TCP, sur l'interface loopback uniquement (0 pour un port libre)
+     * @return le serveur, qui n'accepte les connexions qu'après start
+     */
+    public static GameServer tcp(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        return new GameServer(server);
+    }
+
+    /**
+     * @param file le chemin du socket Unix, remplacé s'il existe déjà
+     * @return le serveur, qui n'accepte les connexions qu'après start
+     */
+    public static GameServer unix(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(file), BACKLOG);
+        return new GameServer(server);
+    }
+
+    /**
+     * Un thread virtuel par tâche si la JVM le permet (Java 21), sinon un pool de threads démons
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "game-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return l'adresse sur laquelle le serveur écoute
+     */
+    public SocketAddress getAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+
+    /**
+     * @return le nombre de connexions ouvertes
+     */
+    public int getSessionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Commence à accepter les connexions, sur un thread du serveur
+     */
+    public void start() {
+        executor.execute(this::accept);
+    }
+
+    private void accept() {
+        while (server.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+                if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+                    // les réponses sont courtes : on les envoie sans attendre d'en avoir plusieurs
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // par exemple plus de descripteurs de fichiers : on refuse cette connexion, pas les suivantes
+                System.err.println("Connexion refusée : " + e.getMessage());
+                pause();
+                continue;
+            }
+            connections.add(channel);
+            executor.execute(() -> {
+                try (channel) {
+                    new Session(channel).run();
+                } catch (IOException e) {
+                    // connexion coupée par le client : la session s'arrête
+                } finally {
+                    connections.remove(channel);
+                }
+            });
+        }
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Arrête d'accepter les connexions et ferme celles qui sont ouvertes
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (SocketChannel channel : connections) {
+            channel.close();
+        }
+        executor.shutdown();
+    }
+}
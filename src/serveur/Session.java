@@ -0,0 +1,161 @@
+package serveur;
+
+import modele.Direction;
+import modele.Game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Une connexion au serveur et sa partie. Le protocole est textuel, une commande par ligne et une réponse d'une ligne par commande
+ * (un client peut envoyer plusieurs commandes sans attendre les réponses) :
+ * new [taille] [graine] : nouvelle partie (4x4 et graine aléatoire par défaut, au plus MAX_SIZE), une partie 4x4 est créée à la connexion
+ * u, d, l, r (ou up, down, left, right) : déplacement
+ * undo, redo, restart, board : annulation, rétablissement, redémarrage, état de la partie
+ * swap x1 y1 x2 y2 : échange de deux cases (déblocage)
+ * seed : graine de la partie, répondue "ok graine"
+ * quit : fermeture de la connexion
+ * Les commandes sur la partie répondent son état : "ok changé fini déblocages temps grille", changé et fini valant 0 ou 1, le temps
+ * en millisecondes, et la grille ligne par ligne, un caractère par case (l'exposant en base 32 : 0 pour vide, 1 pour 2, b pour 2048...).
+ * Une commande invalide répond "err message".
+ */
+class Session {
+    private static final int MAX_LINE = 256;
+    // taille maximale des parties d'une session, pour qu'un client ne puisse pas réserver des centaines de Mo
+    static final int MAX_SIZE = 64;
+
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+    private ByteBuffer out = ByteBuffer.allocate(MAX_LINE);
+    private final StringBuilder reply = new StringBuilder(MAX_LINE);
+    private Game game;
+    private long seed;
+
+    Session(SocketChannel channel) {
+        this.channel = channel;
+        newGame(4, System.nanoTime());
+    }
+
+    /**
+     * Lit et exécute les commandes jusqu'à la fin de la connexion. Les réponses aux commandes arrivées ensemble sont envoyées ensemble.
+     */
+    void run() throws IOException {
+        while (channel.read(in) >= 0) {
+            in.flip();
+            int start = in.position();
+            boolean quit = false;
+            for (int i = start; i < in.limit() && !quit; i++) {
+                if (in.get(i) == '\n') {
+                    quit = !execute(line(start, i));
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            in.compact();
+            if (!in.hasRemaining()) {
+                reply.append("err line too long\n");
+                in.clear();
+            }
+            flush();
+            if (quit) {
+                return;
+            }
+        }
+    }
+
+    private String line(int start, int end) {
+        if (end > start && in.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        in.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Exécute une commande et ajoute sa réponse à celles à envoyer
+     * @return false si la connexion doit être fermée
+     */
+    private boolean execute(String line) {
+        String[] words = line.split(" +");
+        try {
+            switch (words[0]) {
+                case "u": case "up": state(game.move(Direction.up)); break;
+                case "d": case "down": state(game.move(Direction.down)); break;
+                case "l": case "left": state(game.move(Direction.left)); break;
+                case "r": case "right": state(game.move(Direction.right)); break;
+                case "undo": state(game.undo()); break;
+                case "redo": state(game.redo()); break;
+                case "restart": game.restart(); state(true); break;
+                case "board": state(false); break;
+                case "seed": reply.append("ok ").append(seed).append('\n'); break;
+                case "new":
+                    newGame(words.length > 1 ? Integer.parseInt(words[1]) : 4,
+                            words.length > 2 ? Long.parseLong(words[2]) : System.nanoTime());
+                    state(true);
+                    break;
+                case "swap":
+                    if (words.length != 5) {
+                        throw new IllegalArgumentException("usage: swap x1 y1 x2 y2");
+                    }
+                    int unlock = game.getUnlock();
+                    game.setUnlockedCell(Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+                    game.switchCell(Integer.parseInt(words[3]), Integer.parseInt(words[4]));
+                    state(game.getUnlock() != unlock);
+                    break;
+                case "quit": return false;
+                default: reply.append("err unknown command ").append(words[0]).append('\n');
+            }
+        } catch (IllegalArgumentException e) {
+            reply.append("err ").append(e.getMessage()).append('\n');
+        }
+        return true;
+    }
+
+    private void newGame(int size, long seed) {
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("size must be at most " + MAX_SIZE);
+        }
+        this.game = Game.builder(size).seed(seed).build();
+        this.seed = seed;
+    }
+
+    /**
+     * Ajoute l'état de la partie aux réponses à envoyer
+     * @param changed true si la commande a changé la grille
+     */
+    private void state(boolean changed) {
+        int size = game.getSize();
+        reply.append("ok ").append(changed ? '1' : '0').append(' ').append(game.isGameOver() ? '1' : '0')
+                .append(' ').append(game.getUnlock()).append(' ').append((long) (game.getTimeElapsedMillis() * 1000)).append(' ');
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                reply.append(Character.forDigit(game.getExponent(i, j), 32));
+            }
+        }
+        reply.append('\n');
+    }
+
+    /**
+     * Envoie les réponses accumulées
+     */
+    private void flush() throws IOException {
+        if (reply.length() == 0) {
+            return;
+        }
+        if (out.capacity() < reply.length()) {
+            out = ByteBuffer.allocate(Math.max(reply.length(), 2 * out.capacity()));
+        }
+        out.clear();
+        for (int i = 0; i < reply.length(); i++) {
+            out.put((byte) reply.charAt(i));
+        }
+        reply.setLength(0);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+}
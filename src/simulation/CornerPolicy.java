@@ -0,0 +1,29 @@
+package simulation;
+
+import modele.Direction;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Stratégie du coin : on garde les grosses cases dans le coin en haut à gauche en jouant haut puis gauche tant que c'est possible,
+ * droite si on est bloqué, et bas seulement en dernier recours
+ */
+public class CornerPolicy implements MovePolicy {
+    private static final Direction[] PRIORITY = {Direction.up, Direction.left, Direction.right, Direction.down};
+
+    @Override
+    public Direction choose(Game game, Random random) {
+        for (Direction direction : PRIORITY) {
+            if (game.canMove(direction)) {
+                return direction;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "corner";
+    }
+}
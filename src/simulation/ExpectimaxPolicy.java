@@ -0,0 +1,40 @@
+package simulation;
+
+import ia.ExpectimaxSolver;
+import modele.Bitboard;
+import modele.Direction;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Joue le coup choisi par le solveur expectimax, à profondeur fixe pour que les parties restent reproductibles.
+ * Les grilles que le solveur ne sait pas traiter (autre taille que 4x4) sont jouées avec la stratégie du coin.
+ */
+public class ExpectimaxPolicy implements MovePolicy {
+    private final ExpectimaxSolver solver;
+    private final int depth;
+    private final MovePolicy fallback = new CornerPolicy();
+
+    /**
+     * @param solver le solveur, partagé par toutes les parties
+     * @param depth le nombre de coups explorés
+     */
+    public ExpectimaxPolicy(ExpectimaxSolver solver, int depth) {
+        this.solver = solver;
+        this.depth = depth;
+    }
+
+    @Override
+    public Direction choose(Game game, Random random) {
+        if (!Bitboard.fits(game)) {
+            return fallback.choose(game, random);
+        }
+        return solver.bestMove(game, 0, depth);
+    }
+
+    @Override
+    public String toString() {
+        return "expectimax";
+    }
+}
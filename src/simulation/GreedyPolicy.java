@@ -0,0 +1,39 @@
+package simulation;
+
+import modele.Direction;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Joue la direction qui fusionne le plus de cases (et libère donc le plus de place), en départageant les égalités au hasard
+ */
+public class GreedyPolicy implements MovePolicy {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    @Override
+    public Direction choose(Game game, Random random) {
+        Direction best = null;
+        int bestMerges = -1;
+        int ties = 0;
+        for (Direction direction : DIRECTIONS) {
+            if (!game.canMove(direction)) {
+                continue;
+            }
+            int merges = Moves.merges(game, direction);
+            if (merges > bestMerges) {
+                best = direction;
+                bestMerges = merges;
+                ties = 1;
+            } else if (merges == bestMerges && random.nextInt(++ties) == 0) {
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return "greedy";
+    }
+}
@@ -0,0 +1,19 @@
+package simulation;
+
+import modele.Direction;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Stratégie de jeu utilisée par le simulateur : choisit la direction du prochain coup à partir de l'état du jeu
+ */
+public interface MovePolicy {
+
+    /**
+     * @param game le jeu en cours, qui ne doit pas être modifié par la stratégie
+     * @param random le générateur propre à la partie, pour les stratégies qui tirent au hasard
+     * @return la direction à jouer, qui doit faire bouger au moins une case, ou null si plus aucun coup n'est possible
+     */
+    Direction choose(Game game, Random random);
+}
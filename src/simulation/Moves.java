@@ -0,0 +1,50 @@
+package simulation;
+
+import modele.Direction;
+import modele.Game;
+
+/**
+ * Analyse d'un coup sans le jouer (au-delà de Game.canMove), en lisant les lignes (ou colonnes) de la grille dans le sens du déplacement.
+ * L'indice k = 0 d'une ligne est la case du bord vers lequel les cases glissent.
+ */
+final class Moves {
+
+    private Moves() {
+    }
+
+    private static int valueAt(Game game, Direction direction, int line, int k) {
+        int last = game.getSize() - 1;
+        switch (direction) {
+            case left:
+                return game.getCell(line, k).getValue();
+            case right:
+                return game.getCell(line, last - k).getValue();
+            case up:
+                return game.getCell(k, line).getValue();
+            default:
+                return game.getCell(last - k, line).getValue();
+        }
+    }
+
+    /**
+     * @return le nombre de fusions que produirait le coup dans la direction donnée
+     */
+    static int merges(Game game, Direction direction) {
+        int merges = 0;
+        for (int line = 0; line < game.getSize(); line++) {
+            int previous = 0;
+            for (int k = 0; k < game.getSize(); k++) {
+                int value = valueAt(game, direction, line, k);
+                if (value != 0) {
+                    if (value == previous) {
+                        merges++;
+                        previous = 0;
+                    } else {
+                        previous = value;
+                    }
+                }
+            }
+        }
+        return merges;
+    }
+}
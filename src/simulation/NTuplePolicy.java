@@ -0,0 +1,39 @@
+package simulation;
+
+import ia.NTupleNetwork;
+import modele.Bitboard;
+import modele.Direction;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Joue le coup glouton d'un réseau de n-uplets entraîné (voir NTupleTrainer) : une évaluation par direction, sans recherche.
+ * Les grilles que le réseau ne sait pas évaluer (autre taille que 4x4) sont jouées avec la stratégie du coin.
+ */
+public class NTuplePolicy implements MovePolicy {
+    public static final String WEIGHTS_FILE = "ntuple.weights";
+
+    private final NTupleNetwork network;
+    private final MovePolicy fallback = new CornerPolicy();
+
+    /**
+     * @param network le réseau, partagé par toutes les parties
+     */
+    public NTuplePolicy(NTupleNetwork network) {
+        this.network = network;
+    }
+
+    @Override
+    public Direction choose(Game game, Random random) {
+        if (!Bitboard.fits(game)) {
+            return fallback.choose(game, random);
+        }
+        return network.bestMove(Bitboard.of(game));
+    }
+
+    @Override
+    public String toString() {
+        return "ntuple";
+    }
+}
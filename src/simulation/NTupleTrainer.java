@@ -0,0 +1,128 @@
+package simulation;
+
+import ia.NTupleNetwork;
+import modele.Bitboard;
+import modele.Direction;
+import modele.SeededRandom;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Entraînement d'un réseau de n-uplets par parties contre lui-même, avec les règles du jeu sur le plateau compacté (voir Bitboard) :
+ * à chaque coup, le joueur choisit la direction qui maximise les points gagnés plus la valeur du plateau obtenu (avant la nouvelle case),
+ * puis la valeur du plateau obtenu au coup précédent est rapprochée de cette somme (différence temporelle, TD(0) sur les états
+ * d'après-coup). La valeur du dernier plateau d'une partie est rapprochée de 0.
+ * Les parties sont réparties sur un ForkJoinPool, comme dans Simulator, et tous les threads mettent à jour le même réseau sans verrou
+ * (voir NTupleNetwork.learn) : le débit augmente avec le nombre de coeurs.
+ */
+public class NTupleTrainer {
+    public static final float DEFAULT_LEARNING_RATE = 0.1f;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final NTupleNetwork network;
+    private final float learningRate;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param network le réseau entraîné
+     * @param learningRate la part de l'erreur corrigée à chaque coup (voir NTupleNetwork.learn)
+     * @param pool le pool sur lequel les parties sont jouées
+     */
+    public NTupleTrainer(NTupleNetwork network, float learningRate, ForkJoinPool pool) {
+        this.network = network;
+        this.learningRate = learningRate;
+        this.pool = pool;
+    }
+
+    /**
+     * Joue le nombre de parties demandé en entraînant le réseau. La partie numéro i utilise la graine seed + i (le résultat dépend
+     * cependant de l'ordre des mises à jour entre les threads).
+     * @param games le nombre de parties à jouer
+     * @param seed la graine du lot
+     * @return le rapport du lot, dont le débit en coups par seconde
+     */
+    public SimulationReport train(long games, long seed) {
+        long threshold = Math.max(1, games / (pool.getParallelism() * 16L));
+        long start = System.nanoTime();
+        SimulationReport report = pool.invoke(new Batch(0, games, seed, threshold));
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Joue une partie en entraînant le réseau
+     * @param seed la graine de la partie
+     * @param report le rapport dans lequel on enregistre la partie
+     */
+    private void play(long seed, SimulationReport report) {
+        Random random = new SeededRandom(seed);
+        long board = Bitboard.spawn(Bitboard.spawn(0, random), random);
+        long previous = 0;
+        long moves = 0;
+        while (true) {
+            long bestAfter = board;
+            float bestValue = Float.NEGATIVE_INFINITY;
+            for (Direction direction : DIRECTIONS) {
+                long after = Bitboard.move(board, direction);
+                if (after == board) {
+                    continue;
+                }
+                float value = Bitboard.score(board, direction) + network.evaluate(after);
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestAfter = after;
+                }
+            }
+            if (bestAfter == board) {
+                break;
+            }
+            if (moves > 0) {
+                network.learn(previous, bestValue, learningRate);
+            }
+            previous = bestAfter;
+            board = Bitboard.spawn(bestAfter, random);
+            moves++;
+        }
+        if (moves > 0) {
+            network.learn(previous, 0, learningRate);
+        }
+        report.addGame(moves, Bitboard.toValue(Bitboard.maxExponent(board)));
+    }
+
+    /**
+     * Tâche qui joue les parties [from, to[, en se découpant en deux tant qu'il reste plus de threshold parties
+     */
+    private class Batch extends RecursiveTask<SimulationReport> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+        private final long seed;
+        private final long threshold;
+
+        Batch(long from, long to, long seed, long threshold) {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected SimulationReport compute() {
+            if (to - from <= threshold) {
+                SimulationReport report = new SimulationReport();
+                for (long i = from; i < to; i++) {
+                    play(seed + i, report);
+                }
+                return report;
+            }
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(from, middle, seed, threshold);
+            left.fork();
+            SimulationReport right = new Batch(middle, to, seed, threshold).compute();
+            return right.merge(left.join());
+        }
+    }
+}
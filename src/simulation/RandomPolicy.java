@@ -0,0 +1,30 @@
+package simulation;
+
+import modele.Direction;
+import modele.Game;
+
+import java.util.Random;
+
+/**
+ * Joue une direction possible tirée au hasard
+ */
+public class RandomPolicy implements MovePolicy {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    @Override
+    public Direction choose(Game game, Random random) {
+        int start = random.nextInt(DIRECTIONS.length);
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            Direction direction = DIRECTIONS[(start + i) % DIRECTIONS.length];
+            if (game.canMove(direction)) {
+                return direction;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "random";
+    }
+}
@@ -0,0 +1,85 @@
+package simulation;
+
+/**
+ * Résultat d'un lot de parties : nombre de parties et de coups joués, et répartition des plus grosses cases atteintes.
+ * Les rapports partiels calculés par chaque tâche sont combinés avec merge.
+ */
+public class SimulationReport {
+    // maxTiles[e] = nombre de parties dont la plus grosse case vaut 2^e
+    private final long[] maxTiles = new long[32];
+    private long games;
+    private long moves;
+    private long elapsedNanos;
+
+    /**
+     * Enregistre une partie terminée
+     * @param moves le nombre de coups joués pendant la partie
+     * @param maxValue la plus grosse case atteinte
+     */
+    void addGame(long moves, int maxValue) {
+        this.games++;
+        this.moves += moves;
+        this.maxTiles[Integer.numberOfTrailingZeros(maxValue)]++;
+    }
+
+    /**
+     * Ajoute au rapport courant les parties d'un autre rapport
+     * @param other le rapport à ajouter
+     * @return le rapport courant
+     */
+    SimulationReport merge(SimulationReport other) {
+        games += other.games;
+        moves += other.moves;
+        for (int e = 0; e < maxTiles.length; e++) {
+            maxTiles[e] += other.maxTiles[e];
+        }
+        return this;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * @param value la valeur d'une case (2, 4, 8, ...)
+     * @return le nombre de parties dont la plus grosse case vaut exactement value
+     */
+    public long getMaxTileCount(int value) {
+        return maxTiles[Integer.numberOfTrailingZeros(value)];
+    }
+
+    public double getGamesPerSecond() {
+        return games / (elapsedNanos / 1e9);
+    }
+
+    public double getMovesPerSecond() {
+        return moves / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return le rapport sous forme de texte : débit, puis pour chaque plus grosse case le nombre de parties et le pourcentage cumulé
+     * des parties qui l'ont atteinte
+     */
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(String.format("%d parties, %d coups en %.3f s%n", games, moves, elapsedNanos / 1e9));
+        stringBuilder.append(String.format("%.0f parties/s, %.0f coups/s%n", getGamesPerSecond(), getMovesPerSecond()));
+        long reached = games;
+        for (int e = 1; e < maxTiles.length; e++) {
+            if (maxTiles[e] != 0) {
+                stringBuilder.append(String.format("%8d : %10d parties (%6.2f %% l'ont atteinte)%n", 1L << e, maxTiles[e], 100.0 * reached / games));
+            }
+            reached -= maxTiles[e];
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package simulation;
+
+import ia.ExpectimaxSolver;
+import ia.NTupleNetwork;
+import modele.Direction;
+import modele.Game;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Simulateur sans interface : joue un grand nombre de parties indépendantes sur un ForkJoinPool, un Game par partie.
+ * Les parties n'ont aucun état partagé (chaque jeu a son propre générateur, sans timer ni fichier), le débit augmente donc
+ * avec le nombre de coeurs.
+ */
+public class Simulator {
+    private final int size;
+    private final MovePolicy policy;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param size la taille des grilles
+     * @param policy la stratégie utilisée pour choisir chaque coup
+     * @param pool le pool sur lequel les parties sont jouées
+     */
+    public Simulator(int size, MovePolicy policy, ForkJoinPool pool) {
+        this.size = size;
+        this.policy = policy;
+        this.pool = pool;
+    }
+
+    /**
+     * Joue le nombre de parties demandé. La partie numéro i utilise la graine seed + i, un lot est donc reproductible.
+     * @param games le nombre de parties à jouer
+     * @param seed la graine du lot
+     * @return le rapport du lot
+     */
+    public SimulationReport run(long games, long seed) {
+        long threshold = Math.max(1, games / (pool.getParallelism() * 16L));
+        long start = System.nanoTime();
+        SimulationReport report = pool.invoke(new Batch(0, games, seed, threshold));
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Joue une partie jusqu'à ce que plus aucun coup ne soit possible
+     * @param seed la graine de la partie
+     * @param report le rapport dans lequel on enregistre la partie
+     */
+    private void play(long seed, SimulationReport report) {
+        Random random = new Random(seed);
+        Game game = new Game(size, random);
+        long moves = 0;
+        while (!game.isGameOver()) {
+            Direction direction = policy.choose(game, random);
+            if (direction == null) {
+                break;
+            }
+            if (game.move(direction)) {
+                moves++;
+            }
+        }
+        report.addGame(moves, game.getMaxValue());
+    }
+
+    /**
+     * Tâche qui joue les parties [from, to[, en se découpant en deux tant qu'il reste plus de threshold parties
+     */
+    private class Batch extends RecursiveTask<SimulationReport> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+        private final long seed;
+        private final long threshold;
+
+        Batch(long from, long to, long seed, long threshold) {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected SimulationReport compute() {
+            if (to - from <= threshold) {
+                SimulationReport report = new SimulationReport();
+                for (long i = from; i < to; i++) {
+                    play(seed + i, report);
+                }
+                return report;
+            }
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(from, middle, seed, threshold);
+            left.fork();
+            SimulationReport right = new Batch(middle, to, seed, threshold).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * @param name le nom d'une stratégie : random, greedy, corner, expectimax ou ntuple (réseau entraîné, lu dans NTuplePolicy.WEIGHTS_FILE)
+     * @return la stratégie correspondante
+     */
+    public static MovePolicy policy(String name) {
+        switch (name) {
+            case "random":
+                return new RandomPolicy();
+            case "greedy":
+                return new GreedyPolicy();
+            case "corner":
+                return new CornerPolicy();
+            case "expectimax":
+                return new ExpectimaxPolicy(new ExpectimaxSolver(), 2);
+            case "ntuple":
+                try {
+                    return new NTuplePolicy(NTupleNetwork.load(Paths.get(NTuplePolicy.WEIGHTS_FILE), false));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Lecture de " + NTuplePolicy.WEIGHTS_FILE + " impossible : " + e.getMessage(), e);
+                }
+            default:
+                throw new IllegalArgumentException("Stratégie inconnue : " + name);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package vue_controleur;
+
+import modele.BoardSnapshot;
+import modele.Game;
+import modele.MoveDiff;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Composant qui dessine lui-même la grille du jeu, case par case, à partir des images de TileCache.
+ * Les cases sont lues dans la copie de la grille reçue avec chaque changement (voir BoardSnapshot) : l'EDT ne lit jamais la grille pendant un coup.
+ *
+ * Après un coup, les cases glissent de leur position de départ à leur position d'arrivée (d'après le MoveDiff), puis les cases fusionnées
+ * et les nouvelles cases apparaissent. Les images de l'animation sont cadencées par un unique javax.swing.Timer à FRAME_RATE images
+ * par seconde, qui ne tourne que pendant une animation, et chaque image ne redessine que le rectangle des cases concernées
+ * (le composant est dessiné hors écran puis recopié, par le double buffer de Swing).
+ * Un changement qui arrive pendant une animation la termine immédiatement : l'affichage ne prend jamais de retard sur le clavier.
+ */
+class BoardPanel extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    static final int FRAME_RATE = 60;
+    static final int ANIMATION_MILLIS = 120;
+    // au-delà de cette taille de grille, les changements sont affichés sans animation, en ne redessinant que les cases concernées
+    static final int MAX_ANIMATED_SIZE = 16;
+    // part de l'animation consacrée au glissement des cases, le reste à l'apparition des fusions et des nouvelles cases
+    private static final float SLIDE_PART = 0.6f;
+
+    private final TileCache tiles = new TileCache();
+    private final Timer timer = new Timer(1000 / FRAME_RATE, e -> nextFrame());
+    private Game game;
+    private BoardSnapshot shown;
+
+    // animation en cours, null s'il n'y en a pas
+    private MoveDiff animation;
+    private long animationStart;
+    // cases d'arrivée des changements animés, dessinées par l'animation et non à partir de la grille
+    private boolean[] animated;
+    // cases d'arrivée d'une case qui a glissé sans fusionner (une fusion y arrive ensuite sur elle)
+    private boolean[] movedTo;
+    private Rectangle animationBounds;
+
+    /**
+     * @param game le jeu à afficher
+     * @param tileSize la taille souhaitée des cases, en pixels
+     */
+    BoardPanel(Game game, int tileSize) {
+        setOpaque(true);
+        setDoubleBuffered(true);
+        setGame(game, tileSize);
+    }
+
+    /**
+     * Change le jeu affiché, par exemple après un changement de taille de grille
+     */
+    void setGame(Game game, int tileSize) {
+        stopAnimation();
+        this.game = game;
+        this.shown = game.getSnapshot();
+        setPreferredSize(new Dimension(game.getSize() * tileSize, game.getSize() * tileSize));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return la taille actuelle d'une case, en pixels
+     */
+    int getTileSize() {
+        return Math.max(1, Math.min(getWidth(), getHeight()) / game.getSize());
+    }
+
+    /**
+     * Affiche une nouvelle grille, en animant les changements qui y mènent depuis la grille affichée
+     * @param snapshot la grille après les changements
+     * @param changes les changements du dernier coup
+     */
+    void show(BoardSnapshot snapshot, MoveDiff changes) {
+        stopAnimation();
+        shown = snapshot;
+        if (changes.isFull() || changes.getSize() != snapshot.getSize()) {
+            repaint();
+            return;
+        }
+        if (changes.count() == 0) {
+            return;
+        }
+        if (snapshot.getSize() > MAX_ANIMATED_SIZE) {
+            repaintTiles(changes);
+            return;
+        }
+        int size = snapshot.getSize();
+        animated = new boolean[size * size];
+        movedTo = new boolean[size * size];
+        Rectangle bounds = null;
+        for (int k = 0; k < changes.count(); k++) {
+            animated[changes.getToX(k) * size + changes.getToY(k)] = true;
+            if (changes.getType(k) == MoveDiff.SWAPPED) {
+                animated[changes.getFromX(k) * size + changes.getFromY(k)] = true;
+            }
+            if (changes.getType(k) == MoveDiff.MOVED) {
+                movedTo[changes.getToX(k) * size + changes.getToY(k)] = true;
+            }
+            Rectangle change = tileBounds(changes.getFromX(k), changes.getFromY(k)).union(tileBounds(changes.getToX(k), changes.getToY(k)));
+            bounds = bounds == null ? change : bounds.union(change);
+        }
+        animation = changes;
+        animationBounds = bounds;
+        animationStart = System.nanoTime();
+        timer.start();
+        repaint(bounds);
+    }
+
+    /**
+     * Image suivante de l'animation, appelée par le timer sur l'EDT
+     */
+    private void nextFrame() {
+        if (animation == null) {
+            timer.stop();
+            return;
+        }
+        if (System.nanoTime() - animationStart >= ANIMATION_MILLIS * 1_000_000L) {
+            stopAnimation();
+        } else {
+            repaint(animationBounds);
+        }
+    }
+
+    /**
+     * Termine l'animation en cours : les cases sont redessinées à leur place finale, et le timer est arrêté
+     */
+    private void stopAnimation() {
+        timer.stop();
+        if (animation != null) {
+            animation = null;
+            repaint(animationBounds);
+        }
+    }
+
+    /**
+     * Redessine, sans animation, les cases de départ et d'arrivée des changements
+     */
+    private void repaintTiles(MoveDiff changes) {
+        int tileSize = getTileSize();
+        for (int k = 0; k < changes.count(); k++) {
+            repaint(changes.getFromY(k) * tileSize, changes.getFromX(k) * tileSize, tileSize, tileSize);
+            repaint(changes.getToY(k) * tileSize, changes.getToX(k) * tileSize, tileSize, tileSize);
+        }
+    }
+
+    private Rectangle tileBounds(int i, int j) {
+        int tileSize = getTileSize();
+        return new Rectangle(j * tileSize, i * tileSize, tileSize, tileSize);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int tileSize = getTileSize();
+        BoardSnapshot snapshot = shown;
+        int size = snapshot.getSize();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+
+        g.setColor(TileCache.BORDER_COLOR);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        boolean animating = animation != null;
+        int firstRow = Math.max(0, clip.y / tileSize);
+        int lastRow = Math.min(size - 1, (clip.y + clip.height - 1) / tileSize);
+        int firstColumn = Math.max(0, clip.x / tileSize);
+        int lastColumn = Math.min(size - 1, (clip.x + clip.width - 1) / tileSize);
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                int exponent = animating && animated[i * size + j] ? 0 : snapshot.getExponent(i, j);
+                g.drawImage(tiles.get(exponent, tileSize), j * tileSize, i * tileSize, null);
+            }
+        }
+        if (animating) {
+            paintAnimation(g, snapshot, tileSize);
+        }
+    }
+
+    /**
+     * Dessine les cases animées : pendant le glissement, chaque case entre sa position de départ et sa position d'arrivée ;
+     * ensuite, les cases fusionnées à leur nouvelle valeur et les nouvelles cases, qui grandissent jusqu'à leur taille normale
+     */
+    private void paintAnimation(Graphics g, BoardSnapshot snapshot, int tileSize) {
+        MoveDiff changes = animation;
+        int size = snapshot.getSize();
+        float progress = Math.min(1f, (System.nanoTime() - animationStart) / (ANIMATION_MILLIS * 1_000_000f));
+        float slide = Math.min(1f, progress / SLIDE_PART);
+        float grow = progress <= SLIDE_PART ? 0f : (progress - SLIDE_PART) / (1f - SLIDE_PART);
+
+        // la case sur laquelle une autre vient fusionner sans avoir glissé elle-même
+        for (int k = 0; k < changes.count(); k++) {
+            if (changes.getType(k) == MoveDiff.MERGED && slide < 1f && !movedTo[changes.getToX(k) * size + changes.getToY(k)]) {
+                drawTile(g, exponent(changes.getValue(k)) - 1, changes.getToX(k), changes.getToY(k), tileSize, 1f);
+            }
+        }
+        for (int k = 0; k < changes.count(); k++) {
+            int fromX = changes.getFromX(k);
+            int fromY = changes.getFromY(k);
+            int toX = changes.getToX(k);
+            int toY = changes.getToY(k);
+            switch (changes.getType(k)) {
+                case MoveDiff.MOVED:
+                    drawSliding(g, exponent(changes.getValue(k)), fromX, fromY, toX, toY, slide, tileSize);
+                    break;
+                case MoveDiff.MERGED:
+                    if (slide < 1f) {
+                        drawSliding(g, exponent(changes.getValue(k)) - 1, fromX, fromY, toX, toY, slide, tileSize);
+                    }
+                    break;
+                case MoveDiff.SWAPPED:
+                    drawSliding(g, snapshot.getExponent(toX, toY), fromX, fromY, toX, toY, slide, tileSize);
+                    drawSliding(g, snapshot.getExponent(fromX, fromY), toX, toY, fromX, fromY, slide, tileSize);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (slide < 1f) {
+            return;
+        }
+        for (int k = 0; k < changes.count(); k++) {
+            if (changes.getType(k) == MoveDiff.MERGED) {
+                drawTile(g, exponent(changes.getValue(k)), changes.getToX(k), changes.getToY(k), tileSize, 1f);
+            } else if (changes.getType(k) == MoveDiff.SPAWNED && grow > 0f) {
+                drawTile(g, exponent(changes.getValue(k)), changes.getToX(k), changes.getToY(k), tileSize, grow);
+            }
+        }
+    }
+
+    private void drawSliding(Graphics g, int exponent, int fromX, int fromY, int toX, int toY, float slide, int tileSize) {
+        int x = Math.round((fromY + (toY - fromY) * slide) * tileSize);
+        int y = Math.round((fromX + (toX - fromX) * slide) * tileSize);
+        g.drawImage(tiles.get(exponent, tileSize), x, y, null);
+    }
+
+    /**
+     * Dessine une case à sa place, réduite à scale fois sa taille autour de son centre
+     */
+    private void drawTile(Graphics g, int exponent, int i, int j, int tileSize, float scale) {
+        if (scale >= 1f) {
+            g.drawImage(tiles.get(exponent, tileSize), j * tileSize, i * tileSize, null);
+            return;
+        }
+        int scaled = Math.max(1, Math.round(tileSize * scale));
+        int offset = (tileSize - scaled) / 2;
+        g.drawImage(tiles.get(exponent, tileSize), j * tileSize + offset, i * tileSize + offset, scaled, scaled, null);
+    }
+
+    private static int exponent(int value) {
+        return Integer.numberOfTrailingZeros(value);
+    }
+}
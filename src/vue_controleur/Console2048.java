@@ -1,26 +1,33 @@
 package vue_controleur;
 
-import modele.Cell;
 import modele.Direction;
 import modele.Game;
+import modele.GameActor;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.function.BooleanSupplier;
 
 import static com.sun.java.accessibility.util.AWTEventMonitor.addKeyListener;
-import static java.sql.Types.NULL;
 
 public class Console2048 extends Thread implements Observer {
 
     private Game game;
+    // seul thread qui modifie le jeu (voir GameActor)
+    private final GameActor actor;
+    // écrit directement sur la sortie standard, sans passer par le buffer de System.out
+    private final ConsoleRenderer renderer = new ConsoleRenderer(new FileOutputStream(FileDescriptor.out), ConsoleRenderer.DEFAULT_MAX_FPS);
 
 
 
     public Console2048(Game game) {
         this.game = game;
+        this.actor = new GameActor(game);
     }
 
 
@@ -61,24 +68,33 @@ public class Console2048 extends Thread implements Observer {
 
                         switch (s) {
                             case "z":
-                                end = true;
-                                game.move(Direction.up);
+                                // déplacement abandonné (le jeu a du retard) : on continue d'écouter le clavier ; déplacement qui ne change
+                                // rien : le jeu ne notifie pas, l'acteur réveille la console par refresh()
+                                end = actor.move(Direction.up, this::refresh);
 
                                 break;
 
                             case "s":
-                                end = true;
-                                game.move(Direction.down);
+                                end = actor.move(Direction.down, this::refresh);
                                 break;
 
                             case "q":
-                                end = true;
-                                game.move(Direction.left);
+                                end = actor.move(Direction.left, this::refresh);
                                 break;
 
                             case "d":
+                                end = actor.move(Direction.right, this::refresh);
+                                break;
+
+                            case "u":
+                                // sans attendre l'acteur : il réveille la console par update(..), qui attend le verrou tenu ici
+                                actor.execute(() -> undoOrRefresh(game::undo));
+                                end = true;
+                                break;
+
+                            case "y":
+                                actor.execute(() -> undoOrRefresh(game::redo));
                                 end = true;
-                                game.move(Direction.right);
                                 break;
                         }
 
@@ -90,25 +106,27 @@ public class Console2048 extends Thread implements Observer {
 
     /**
      * Correspond à la fonctionnalité de Vue : affiche les données du modèle
+     * Seules les cases qui ont changé depuis le dernier affichage sont redessinées, en une seule écriture (voir ConsoleRenderer).
+     * La grille est lue dans la dernière copie publiée par le jeu, jamais pendant un coup de l'acteur.
      */
     private void display()  {
-
-
-        System.out.print("\033[H\033[J"); // permet d'effacer la console (ne fonctionne pas toujours depuis la console de l'IDE)
-
-        for (int i = 0; i < game.getSize(); i++) {
-            for (int j = 0; j < game.getSize(); j++) {
-                Cell cell = game.getCell(i, j);
-                if (cell.getValue() != NULL) {
-                    System.out.format("%5.5s", "{" + cell.getValue() + "}");
-                } else if (cell.getValue() == NULL) {
-                    System.out.format("%5.5s", "{ }");
-                }
-
-            }
-            System.out.println();
+        try {
+            renderer.render(game.getSnapshot());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
+    /**
+     * Exécute une annulation (ou son rétablissement) sur le thread de l'acteur ; s'il n'y avait rien à annuler, le jeu ne notifie pas
+     * ses observers, et la console est réveillée directement pour se remettre à écouter le clavier
+     */
+    private void undoOrRefresh(BooleanSupplier action) {
+        if (!action.getAsBoolean()) {
+            refresh();
+        }
     }
 
     private void refresh() {
@@ -124,6 +142,8 @@ public class Console2048 extends Thread implements Observer {
 
     @Override
     public void update(Observable o, Object arg) {
-        refresh();
+        if (arg != null) { // sans argument, seul le temps a changé, et il n'est pas affiché dans la console
+            refresh();
+        }
     }
 }
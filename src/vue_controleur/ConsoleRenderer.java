@@ -0,0 +1,161 @@
+package vue_controleur;
+
+import modele.BoardSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Affichage de la grille dans un terminal ANSI.
+ * Le renderer garde l'exposant de chaque case affichée : une image ne contient que les cases qui ont changé depuis la précédente,
+ * chacune précédée d'un déplacement du curseur, et l'écran n'est effacé que pour la première image (ou quand la taille change).
+ * L'image est construite dans un buffer réutilisé puis envoyée en une seule écriture, et les images sont limitées à maxFps par seconde :
+ * les changements arrivés entre-temps sont regroupés dans l'image suivante.
+ */
+public class ConsoleRenderer {
+    public static final int DEFAULT_MAX_FPS = 30;
+    // largeur d'une case à l'écran, comme l'ancien format "%5.5s"
+    private static final int CELL_WIDTH = 5;
+    private static final byte ESC = 27;
+
+    private final OutputStream out;
+    private final long frameNanos;
+    private byte[] frame = new byte[1024];
+    private int length;
+    // exposants affichés, null avant la première image
+    private byte[] shown;
+    private int shownSize;
+    private long lastFrame;
+
+    /**
+     * @param out le flux du terminal, qui reçoit une écriture par image
+     * @param maxFps le nombre maximal d'images par seconde
+     */
+    public ConsoleRenderer(OutputStream out, int maxFps) {
+        if (maxFps <= 0) {
+            throw new IllegalArgumentException("maxFps must be positive");
+        }
+        this.out = out;
+        this.frameNanos = 1_000_000_000L / maxFps;
+        this.lastFrame = System.nanoTime() - frameNanos;
+    }
+
+    /**
+     * Affiche une copie de la grille, après avoir attendu si l'image précédente est trop récente
+     * @param board la copie à afficher (voir Game.getSnapshot)
+     * @return le nombre de cases redessinées
+     */
+    public int render(BoardSnapshot board) throws IOException, InterruptedException {
+        long wait = lastFrame + frameNanos - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+        int size = board.getSize();
+        length = 0;
+        if (shown == null || shownSize != size) {
+            shown = new byte[size * size];
+            Arrays.fill(shown, (byte) -1);
+            shownSize = size;
+            // curseur en haut à gauche, puis effacement de l'écran
+            append(ESC).append("[H").append(ESC).append("[J");
+        }
+        int drawn = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int exponent = board.getExponent(i, j);
+                if (shown[i * size + j] != exponent) {
+                    shown[i * size + j] = (byte) exponent;
+                    moveCursor(i + 1, j * CELL_WIDTH + 1);
+                    appendCell(exponent);
+                    drawn++;
+                }
+            }
+        }
+        if (drawn > 0) {
+            // curseur sous la grille, pour ce que le terminal affiche ensuite
+            moveCursor(size + 1, 1);
+            out.write(frame, 0, length);
+            out.flush();
+        }
+        lastFrame = System.nanoTime();
+        return drawn;
+    }
+
+    /**
+     * Force l'effacement de l'écran et le dessin de toute la grille à la prochaine image
+     */
+    public void invalidate() {
+        shown = null;
+    }
+
+    private void moveCursor(int line, int column) {
+        append(ESC).append('[');
+        appendInt(line);
+        append(';');
+        appendInt(column);
+        append('H');
+    }
+
+    /**
+     * Ajoute une case sur CELL_WIDTH caractères : "{valeur}" ou "{ }", alignée à droite et tronquée comme avec "%5.5s"
+     */
+    private void appendCell(int exponent) {
+        int digits = exponent == 0 ? 1 : digits(1 << exponent);
+        int width = digits + 2;
+        for (int k = width; k < CELL_WIDTH; k++) {
+            append(' ');
+        }
+        int start = length;
+        append('{');
+        if (exponent == 0) {
+            append(' ');
+        } else {
+            appendInt(1 << exponent);
+        }
+        append('}');
+        length = Math.min(length, start + CELL_WIDTH);
+    }
+
+    private void appendInt(int value) {
+        int digits = digits(value);
+        ensure(digits);
+        for (int k = digits - 1; k >= 0; k--) {
+            frame[length + k] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private ConsoleRenderer append(char c) {
+        return append((byte) c);
+    }
+
+    private ConsoleRenderer append(String s) {
+        for (int k = 0; k < s.length(); k++) {
+            append(s.charAt(k));
+        }
+        return this;
+    }
+
+    private ConsoleRenderer append(byte b) {
+        ensure(1);
+        frame[length++] = b;
+        return this;
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(2 * frame.length, length + bytes));
+        }
+    }
+}
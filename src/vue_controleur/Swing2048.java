@@ -1,8 +1,16 @@
 package vue_controleur;
 
-import modele.Cell;
+import ia.ExpectimaxSolver;
+import metriques.GameMetrics;
+import modele.Bitboard;
+import modele.BoardSnapshot;
 import modele.Direction;
 import modele.Game;
+import modele.GameActor;
+import modele.GameSave;
+import modele.Journal;
+import modele.Leaderboard;
+import modele.MoveDiff;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -11,61 +19,75 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
-
-import static java.sql.Types.NULL;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class Swing2048 extends JFrame implements Observer {
     public static final int PIXEL_PER_SQUARE = 100;
-    // tableau de cases : i, j -> case graphique
-    private JLabel[][] tabC;
+    // partie en cours, sauvegardée à la fermeture de la fenêtre et reprise au lancement suivant (voir Main)
+    public static final Path SAVE_FILE = Paths.get("game.save");
+    private static final int FOOTER_ROWS = 3;
+    private static final int FOOTER_COLUMNS = 6;
+    // au-delà, les cases sont réduites pour que la grille tienne dans la fenêtre
+    private static final int MAX_BOARD_PIXELS = 800;
+    private static final int[] LARGE_SIZES = {8, 16, 32, 64, 128, 256};
+    private static final Border FOOTER_BORDER = BorderFactory.createLineBorder(Color.darkGray, 5);
+    private static final Font FOOTER_FONT = new Font("Serif", Font.BOLD, 12);
+    private static final Font GAME_OVER_FONT = new Font("Serif", Font.BOLD, 20);
+    private static final DateFormat DATE_FORMAT = DateFormat.getDateInstance(DateFormat.SHORT);
+    // table de transposition du solveur des conseils : 2^18 entrées (4 Mo), assez pour une recherche de HINT_MILLIS
+    private static final int HINT_TABLE_BITS = 18;
+
+    private BoardPanel board;
+    // lignes sous la grille : i, j -> case graphique (ligne 0 : fin de partie, lignes 1 et 2 : records et temps)
+    private JLabel[][] footer;
     private Game game;
+    // seul thread qui modifie le jeu : les listeners lui confient leurs commandes sans attendre (voir GameActor)
+    private GameActor actor;
+    // journal de la partie affichée, null s'il n'a pas pu être créé
+    private Journal journal;
+    // créé au premier conseil, voir solver()
+    private ExpectimaxSolver solver;
 
 
     /**
      * Cette procédure affiche dans une JFrame, le jeu passé en paramètre, en affichant une grille de la taille correspondante, avec quelques cases supplémentaire
      * qui gèrent le temps de jeu, le meilleur temps pour atteindre 2048, la plus grosse case constituée etc
+     * La grille est dessinée par un BoardPanel, les lignes du dessous sont des JLabel.
      * On affecte également un MenuBar, où il est possible de modifier le nombre de déblocages et la taille du jeu entre autres.
      * On y affecte également des listener pour le clavier et la souris, afin de pouvoir soliciter les actions de l'utilisateur et les calculs du modèle.
+     * La partie est enregistrée dans un journal (voir Journal.record), et sauvegardée dans SAVE_FILE à la fermeture de la fenêtre.
+     * Le jeu n'est modifié que par son GameActor : l'EDT ne fait que déposer les commandes.
      * @param game Le jeu que l'on souhaite afficher sur la fenêtre
      */
     public Swing2048(Game game) {
         this.game = game;
+        this.actor = new GameActor(game);
+        this.journal = Journal.record(game);
         setTitle("2048 GAME");
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(this.game.getSize() * PIXEL_PER_SQUARE, 65+(this.game.getSize()+3) * PIXEL_PER_SQUARE);
-        tabC = new JLabel[this.game.getSize()+3][this.game.getSize()];
-
-        addMenuBar();
-
-        JPanel contentPane = new JPanel(new GridLayout(this.game.getSize()+3, this.game.getSize()));
-
-        for (int i = 0; i < this.game.getSize()+3; i++) {
-            for (int j = 0; j < this.game.getSize(); j++) {
-                tabC[i][j] = new JLabel();
-                if (i== game.getSize()) {
-                    Border border = BorderFactory.createLineBorder(Color.darkGray, 90);
-                    tabC[i][j].setBorder(border);
-                }
-                else {
-                    Border border = BorderFactory.createLineBorder(Color.darkGray, 5);
-                    tabC[i][j].setBorder(border);
-                }
-                tabC[i][j].setHorizontalAlignment(SwingConstants.CENTER);
-                tabC[i][j].setFont(new Font("Serif", Font.BOLD, 20));
-                tabC[i][j].setOpaque(true);
-
-
-
-                contentPane.add(tabC[i][j]);
-
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                quit(0);
             }
-        }
-        setContentPane(contentPane);
+        });
+        addMenuBar();
+        board = new BoardPanel(game, tileSize(game.getSize()));
+        buildContentPane();
         addKeyboardListener();
         addMouseListener();
-        refresh();
+        refresh(game, MoveDiff.full(game.getSize()));
 
     }
 
@@ -75,39 +97,109 @@ public class Swing2048 extends JFrame implements Observer {
      * @param size la taille du nouveau jeu que l'on souhaite afficher
      */
     private void Swing2048(int size){
-        getContentPane().invalidate();
-        getContentPane().validate();
-        getContentPane().repaint();
+        Game old = this.game;
+        Journal oldJournal = this.journal;
+        old.deleteObserver(this);
+        // l'ancien jeu est arrêté par son acteur, après les commandes en attente
+        run(g -> {
+            g.dispose();
+            closeJournal(oldJournal);
+        });
+        actor.close();
         this.game = new Game(size);
-        setSize(this.game.getSize() * PIXEL_PER_SQUARE, 65+(this.game.getSize()+3) * PIXEL_PER_SQUARE);
-        tabC = new JLabel[this.game.getSize()+3][this.game.getSize()];
+        this.actor = new GameActor(game);
+        this.journal = Journal.record(game);
+        this.game.addObserver(this);
+        board.setGame(game, tileSize(size));
+        buildContentPane();
+        refresh(game, MoveDiff.full(game.getSize()));
 
-        JPanel contentPane = new JPanel(new GridLayout(this.game.getSize()+3, this.game.getSize()));
+    }
 
-        for (int i = 0; i < this.game.getSize()+3; i++) {
-            for (int j = 0; j < this.game.getSize(); j++) {
-                tabC[i][j] = new JLabel();
-                if (i== game.getSize()) {
-                    Border border = BorderFactory.createLineBorder(Color.darkGray, 90);
-                    tabC[i][j].setBorder(border);
-                }
-                else {
-                    Border border = BorderFactory.createLineBorder(Color.darkGray, 5);
-                    tabC[i][j].setBorder(border);
-                }
-                tabC[i][j].setHorizontalAlignment(SwingConstants.CENTER);
-                tabC[i][j].setFont(new Font("Serif", Font.BOLD, 20));
-                tabC[i][j].setOpaque(true);
+    /**
+     * @param size la taille de la grille
+     * @return la taille initiale des cases : PIXEL_PER_SQUARE, ou moins pour que la grille ne dépasse pas MAX_BOARD_PIXELS
+     */
+    private static int tileSize(int size) {
+        return Math.max(1, Math.min(PIXEL_PER_SQUARE, MAX_BOARD_PIXELS / size));
+    }
 
+    /**
+     * Confie une commande sur le jeu affiché à son acteur. La commande reçoit le jeu en paramètre : si la taille change entre-temps,
+     * elle s'applique toujours au jeu pour lequel elle a été donnée.
+     */
+    private void run(Consumer<Game> command) {
+        Game target = game;
+        actor.execute(() -> command.accept(target));
+    }
 
+    /**
+     * Sauvegarde la partie en cours et ferme son journal (sur le thread de l'acteur, après les commandes en attente), puis quitte le programme
+     * @param status le code de sortie
+     */
+    private void quit(int status) {
+        Journal current = journal;
+        run(g -> {
+            try {
+                GameSave.write(g, SAVE_FILE);
+            } catch (IOException e) {
+                System.err.println("Sauvegarde de la partie impossible : " + e.getMessage());
+            }
+            closeJournal(current);
+            System.exit(status);
+        });
+    }
 
-                contentPane.add(tabC[i][j]);
+    private static void closeJournal(Journal journal) {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Fermeture du journal impossible : " + e.getMessage());
+            }
+        }
+    }
 
+    /**
+     * Construit le contenu de la fenêtre pour la taille du jeu courant : la grille en haut, et les trois lignes d'informations en dessous
+     * (une colonne par colonne de la grille, dans la limite de FOOTER_COLUMNS)
+     */
+    private void buildContentPane() {
+        int size = game.getSize();
+        int boardPixels = size * tileSize(size);
+        int columns = Math.min(size, FOOTER_COLUMNS);
+        setSize(boardPixels, 65 + boardPixels + FOOTER_ROWS * PIXEL_PER_SQUARE);
+
+        JPanel footerPane = new JPanel(new GridLayout(FOOTER_ROWS, columns));
+        footerPane.setPreferredSize(new Dimension(boardPixels, FOOTER_ROWS * PIXEL_PER_SQUARE));
+        footer = new JLabel[FOOTER_ROWS][columns];
+        for (int i = 0; i < FOOTER_ROWS; i++) {
+            for (int j = 0; j < columns; j++) {
+                footer[i][j] = new JLabel();
+                footer[i][j].setHorizontalAlignment(SwingConstants.CENTER);
+                footer[i][j].setOpaque(true);
+                if (i == 0) {
+                    footer[i][j].setFont(GAME_OVER_FONT);
+                    footer[i][j].setBackground(Color.darkGray);
+                }
+                else {
+                    footer[i][j].setFont(FOOTER_FONT);
+                    footer[i][j].setBorder(FOOTER_BORDER);
+                }
+                footerPane.add(footer[i][j]);
             }
         }
+        footer[1][0].setText("Best score :");
+        footer[1][1].setText("Best time :");
+        footer[1][2].setText("Timer :");
+        if (columns > 3) footer[1][columns - 1].setText("R restart");
+        if (columns > 3) footer[2][columns - 1].setText("B reset");
+
+        JPanel contentPane = new JPanel(new BorderLayout());
+        contentPane.add(board, BorderLayout.CENTER);
+        contentPane.add(footerPane, BorderLayout.SOUTH);
         setContentPane(contentPane);
-        refresh();
-
+        contentPane.revalidate();
     }
 
     /**
@@ -129,10 +221,10 @@ public class Swing2048 extends JFrame implements Observer {
         switchNb.add(switchNb1);
         switchNb.add(switchNb3);
         switchNb.add(switchNb5);
-        switchNb1.addActionListener(e -> game.setUnlock(1));
-        switchNb3.addActionListener(e -> game.setUnlock(3));
-        switchNb5.addActionListener(e -> game.setUnlock(5));
-        switchNb0.addActionListener(e -> game.setUnlock(0));
+        switchNb1.addActionListener(e -> run(g -> g.setUnlock(1)));
+        switchNb3.addActionListener(e -> run(g -> g.setUnlock(3)));
+        switchNb5.addActionListener(e -> run(g -> g.setUnlock(5)));
+        switchNb0.addActionListener(e -> run(g -> g.setUnlock(0)));
         settings.add(switchNb);
 
         Menu size=new Menu("Game size");
@@ -144,6 +236,13 @@ public class Swing2048 extends JFrame implements Observer {
         size.add(size4);
         size.add(size5);
         size.add(size6);
+        Menu large = new Menu("Large");
+        for (int largeSize : LARGE_SIZES) {
+            MenuItem item = new MenuItem(Integer.toString(largeSize));
+            item.addActionListener(e -> Swing2048(largeSize));
+            large.add(item);
+        }
+        size.add(large);
         size3.addActionListener(e -> Swing2048(3));
         size4.addActionListener(e -> Swing2048(4));
         size5.addActionListener(e -> Swing2048(5));
@@ -151,7 +250,7 @@ public class Swing2048 extends JFrame implements Observer {
         settings.add(size);
 
 
-        quitm.addActionListener(e -> System.exit(1));
+        quitm.addActionListener(e -> quit(1));
         settings.add(quitm);
 
         ret.add(settings);
@@ -171,15 +270,22 @@ public class Swing2048 extends JFrame implements Observer {
         MenuItem rule4 = new MenuItem("You can reset it pressing B");
         MenuItem rule5 = new MenuItem("You can restart game pressing R");
         MenuItem rule6 = new MenuItem("You can switch two cells by sliding one to the other") ;
+        MenuItem rule7 = new MenuItem("You can play the AI hint pressing H (4x4 only)");
+        MenuItem rule8 = new MenuItem("You can undo a move pressing U, and redo it pressing Y");
         rules.add(rule1);
         rules.add(rule2);
         rules.add(rule3);
         rules.add(rule4);
         rules.add(rule5);
         rules.add(rule6);
+        rules.add(rule7);
+        rules.add(rule8);
+        MenuItem leaderboard = new MenuItem("Leaderboard");
+        leaderboard.addActionListener(e -> showLeaderboard());
         game1.add(project);
         game1.add(dev);
         game1.add(rules);
+        game1.add(leaderboard);
         ret.add(game1);
         setMenuBar(ret);
     }
@@ -187,60 +293,63 @@ public class Swing2048 extends JFrame implements Observer {
 
 
 
+    /**
+     * Affiche les meilleurs résultats pour la taille et le nombre de déblocages de la partie en cours. Le tableau est lu par le thread
+     * d'écriture des scores, qui peut attendre le verrou du fichier : il est affiché sur l'EDT une fois lu.
+     */
+    private void showLeaderboard() {
+        int size = game.getSize();
+        int unlock = game.getSnapshot().getUnlock();
+        game.getLeaderboard().thenAccept(entries -> SwingUtilities.invokeLater(() -> showLeaderboard(entries, size, unlock)));
+    }
+
+    private void showLeaderboard(List<Leaderboard.Entry> entries, int size, int unlock) {
+        StringBuilder text = new StringBuilder();
+        int rank = 1;
+        for (Leaderboard.Entry entry : entries) {
+            text.append(rank++).append(". ").append(entry.getPlayer()).append("  ").append(entry.getMaxTile());
+            if (entry.getTimeMillis() > 0) {
+                text.append("  2048 en ").append(entry.getTimeMillis() / 1000.0).append("s");
+            }
+            text.append("  ").append(DATE_FORMAT.format(new Date(entry.getDate()))).append('\n');
+        }
+        JOptionPane.showMessageDialog(this, text.length() == 0 ? "Aucun résultat" : text.toString(),
+                "Leaderboard " + size + "x" + size + ", " + unlock + " switch", JOptionPane.PLAIN_MESSAGE);
+    }
+
     /**
      * Correspond à la fonctionnalité de Vue : affiche les données du modèle
+     * Les lignes du bas (temps, records) sont toujours mises à jour, la grille seulement quand elle a changé : la copie de la grille est prise
+     * ici, sur le thread qui vient de la publier, et la grille affichée y passe en animant changes (voir BoardPanel).
+     * Les changements d'un jeu qui n'est plus affiché (changement de taille de grille entre-temps) sont ignorés.
+     * La durée du traitement sur l'EDT est mesurée (voir GameMetrics), le dessin des cases lui-même a lieu plus tard, dans paintComponent.
+     * @param source le jeu qui a changé
+     * @param changes les changements de la grille depuis le dernier affichage, null si seul le temps a changé
      */
-    private void refresh()  {
+    private void refresh(Game source, MoveDiff changes)  {
+        BoardSnapshot snapshot = source.getSnapshot();
 
         SwingUtilities.invokeLater(new Runnable() { // demande au processus graphique de réaliser le traitement
             @Override
             public void run() {
-                if (game.isGameOver()) {
-                    Border border = BorderFactory.createLineBorder(Color.darkGray, 5);
-                    tabC[game.getSize() ][1].setBorder(border);
-                    tabC[game.getSize() ][2].setBorder(border);
-                    tabC[game.getSize() ][1].setText("GAME");
-                    tabC[game.getSize() ][2].setText("OVER");
-                }
-                else {
-                    Border border = BorderFactory.createLineBorder(Color.darkGray, 90);
-                    tabC[game.getSize() ][1].setBorder(border);
-                    tabC[game.getSize() ][2].setBorder(border);
-                }
-                for (int i = game.getSize()+1; i <= game.getSize()+2; i++) {
-                    for (int j = 0; j<=3; j++) {
-                        if (j<game.getSize()) {
-                            tabC[i][j].setFont(new Font("Serif", Font.BOLD, 12));
-                        }
-                    }
+                long start = System.nanoTime();
+                if (source != game) {
+                    return;
                 }
-                tabC[game.getSize()+1][0].setText("Best score :");
-                tabC[game.getSize()+1][1].setText("Best time :");
-                tabC[game.getSize()+1][2].setText("Timer :");
-                if (game.getSize()>3) tabC[game.getSize()+1][game.getSize()-1].setText("R restart");
-
-                tabC[game.getSize()+2][0].setText(game.getBestScore()+"");
-                tabC[game.getSize()+2][1].setText(game.getBestTime() + "");
-                tabC[game.getSize()+2][2].setText(game.getTimeElapsed()+ "s");
-                if (game.getSize()>3) tabC[game.getSize()+2][game.getSize()-1].setText("B reset");
-
-                for (int i = 0; i < game.getSize(); i++) {
-                    for (int j = 0; j < game.getSize(); j++) {
-                        Cell cell = game.getCell(i, j);
-
-                        if (cell.getValue() == NULL) {
-
-                            tabC[i][j].setText("");
-                            tabC[i][j].setBackground(new Color(255, 255, 255));
-
-                        } else {
-                            tabC[i][j].setText(cell.getValue() + "");
-                            tabC[i][j].setBackground(cell.getColor());
-                        }
-
-
-                    }
+                boolean over = snapshot.isGameOver();
+                footer[0][1].setText(over ? "GAME" : "");
+                footer[0][2].setText(over ? "OVER" : "");
+                footer[0][1].setBackground(over ? Color.lightGray : Color.darkGray);
+                footer[0][2].setBackground(over ? Color.lightGray : Color.darkGray);
+
+                footer[2][0].setText(game.getBestScore()+"");
+                footer[2][1].setText(game.getBestTime() + "");
+                footer[2][2].setText(game.getTimeElapsed()+ "s");
+
+                if (changes != null) {
+                    board.show(snapshot, changes);
                 }
+                GameMetrics.get().refreshed(System.nanoTime() - start);
             }
         });
     }
@@ -253,29 +362,59 @@ public class Swing2048 extends JFrame implements Observer {
             @Override
             public void keyPressed(KeyEvent e) {
                 switch(e.getKeyCode()) {  // on regarde quelle touche a été pressée
-                    case KeyEvent.VK_LEFT : game.move(Direction.left); break;
-                    case KeyEvent.VK_RIGHT : game.move(Direction.right); break;
-                    case KeyEvent.VK_DOWN : game.move(Direction.down); break;
-                    case KeyEvent.VK_UP : game.move(Direction.up); break;
-                    case KeyEvent.VK_R : game.restart(); break;
-                    case KeyEvent.VK_B : game.resetBestScore(); break;
+                    case KeyEvent.VK_LEFT : actor.move(Direction.left); break;
+                    case KeyEvent.VK_RIGHT : actor.move(Direction.right); break;
+                    case KeyEvent.VK_DOWN : actor.move(Direction.down); break;
+                    case KeyEvent.VK_UP : actor.move(Direction.up); break;
+                    case KeyEvent.VK_R : run(Game::restart); break;
+                    case KeyEvent.VK_B : run(Game::resetBestScore); break;
+                    case KeyEvent.VK_H : run(g -> playHint(g)); break;
+                    case KeyEvent.VK_U : run(Game::undo); break;
+                    case KeyEvent.VK_Y : run(Game::redo); break;
                 }
             }
         });
     }
 
+    /**
+     * Joue le coup conseillé par le solveur expectimax (environ 50 ms de recherche, sur le thread de l'acteur), uniquement sur une grille 4x4
+     */
+    private void playHint(Game target) {
+        if (Bitboard.fits(target)) {
+            Direction direction = solver().hint(target);
+            if (direction != null) {
+                target.move(direction);
+            }
+        }
+    }
+
+    /**
+     * @return le solveur des conseils, créé à la première demande : une fenêtre où l'on ne demande jamais de conseil n'alloue pas sa table
+     */
+    private synchronized ExpectimaxSolver solver() {
+        if (solver == null) {
+            solver = new ExpectimaxSolver(ForkJoinPool.commonPool(), HINT_TABLE_BITS);
+        }
+        return solver;
+    }
+
     /**
      * Correspond à la fonctionnalité de Contrôleur : écoute les évènements, et déclenche des traitements sur le modèle
+     * Les clics sont écoutés sur la grille elle-même, et convertis en case avec la taille actuelle des cases
      */
     public void addMouseListener() {
-        addMouseListener(new MouseAdapter() { // new MouseAdapter() { ... } est une instance de classe anonyme, il s'agit d'un objet qui correspond au controleur dans MVC
+        board.addMouseListener(new MouseAdapter() { // new MouseAdapter() { ... } est une instance de classe anonyme, il s'agit d'un objet qui correspond au controleur dans MVC
             @Override
             public void mousePressed(MouseEvent e) {
-                game.setUnlocked(e.getX(), e.getY());
+                int x = e.getY() / board.getTileSize();
+                int y = e.getX() / board.getTileSize();
+                run(g -> g.setUnlockedCell(x, y));
             }
             @Override
             public void mouseReleased(MouseEvent e) {
-                game.switchPosition(e.getX(), e.getY());
+                int x = e.getY() / board.getTileSize();
+                int y = e.getX() / board.getTileSize();
+                run(g -> g.switchCell(x, y));
             }
         });
     }
@@ -284,6 +423,6 @@ public class Swing2048 extends JFrame implements Observer {
 
     @Override
     public void update(Observable o, Object arg) {
-        refresh();
+        refresh((Game) o, (MoveDiff) arg);
     }
 }
\ No newline at end of file
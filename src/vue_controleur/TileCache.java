@@ -0,0 +1,64 @@
+package vue_controleur;
+
+import modele.Cell;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Images des cases, dessinées une seule fois par valeur et par taille de case : une case déjà vue est ensuite simplement recopiée.
+ * Le cache est vidé quand la taille des cases change (redimensionnement de la fenêtre, changement de taille de grille).
+ */
+class TileCache {
+    static final int BORDER = 5;
+    static final Color BORDER_COLOR = Color.darkGray;
+    // en dessous de cette taille (grandes grilles), les cases sont dessinées sans texte
+    static final int MIN_TEXT_TILE = 24;
+
+    // images[e] = image de la case de valeur 2^e (images[0] : case vide)
+    private BufferedImage[] images = new BufferedImage[32];
+    private int tileSize;
+
+    /**
+     * @param exponent l'exposant de la case à dessiner, 0 pour une case vide
+     * @param tileSize la taille de la case, en pixels
+     * @return l'image de la case
+     */
+    BufferedImage get(int exponent, int tileSize) {
+        if (tileSize != this.tileSize) {
+            images = new BufferedImage[images.length];
+            this.tileSize = tileSize;
+        }
+        BufferedImage image = images[exponent];
+        if (image == null) {
+            image = render(Cell.ofExponent(exponent), tileSize);
+            images[exponent] = image;
+        }
+        return image;
+    }
+
+    private static BufferedImage render(Cell cell, int tileSize) {
+        BufferedImage image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(BORDER_COLOR);
+        g.fillRect(0, 0, tileSize, tileSize);
+
+        Color color = cell.getColor();
+        g.setColor(color);
+        int border = Math.min(BORDER, tileSize / 10);
+        g.fillRect(border, border, tileSize - 2 * border, tileSize - 2 * border);
+
+        if (cell.getValue() != 0 && tileSize >= MIN_TEXT_TILE) {
+            String text = Integer.toString(cell.getValue());
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(new Font("Serif", Font.BOLD, Math.min(20, tileSize / 3)));
+            FontMetrics metrics = g.getFontMetrics();
+            // texte clair sur les cases sombres
+            boolean dark = color.getRed() + color.getGreen() + color.getBlue() < 3 * 80;
+            g.setColor(dark ? Color.white : Color.black);
+            g.drawString(text, (tileSize - metrics.stringWidth(text)) / 2, (tileSize - metrics.getHeight()) / 2 + metrics.getAscent());
+        }
+        g.dispose();
+        return image;
+    }
+}